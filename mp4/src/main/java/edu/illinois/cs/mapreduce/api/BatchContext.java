@@ -0,0 +1,25 @@
+package edu.illinois.cs.mapreduce.api;
+
+import java.io.IOException;
+
+/**
+ * Context that also stores whole batches of key/value pairs, passed to
+ * {@link BatchMapper}s.
+ * 
+ * @author benjamin
+ * @param <K> type of keys stored in this context
+ * @param <V> type of values stored in this context
+ */
+public interface BatchContext<K, V> extends Context<K, V> {
+
+    /**
+     * Stores all key/value pairs of the given batch. Like single pairs, the
+     * batch and its records may be changed once the method returns.
+     * 
+     * @param batch batch to store
+     * @throws IOException if any IOException occurred storing the key/value
+     *             pairs
+     */
+    void write(RecordBatch<K, V> batch) throws IOException;
+
+}
@@ -0,0 +1,54 @@
+package edu.illinois.cs.mapreduce.api;
+
+import java.io.IOException;
+
+/**
+ * A mapper that is given its input in batches of records. The framework fills
+ * the batches from the record reader and checks for cancellation once per
+ * batch, which saves the cost of a call per record for small records. The
+ * size of the batches is set by the 'map.batch.size' property (default 1000).
+ * If the job maps records on several threads, each thread is given batches of
+ * 'map.runner.batch.size' records instead.
+ * 
+ * @author benjamin
+ * @param <KI> type of the input key to this Mapper
+ * @param <VI> type of the input value to this Mapper
+ * @param <KO> type of the output keys produced by this Mapper
+ * @param <VO> type of the output values produced by this Mapper
+ */
+public abstract class BatchMapper<KI, VI, KO, VO> extends Mapper<KI, VI, KO, VO> {
+
+    /**
+     * Maps a batch of records. The batch, and the keys and values of a reader
+     * that reuses objects, are changed once the method returns.
+     * 
+     * @param batch input records
+     * @param context context for reporting status and storing output keys and
+     *            values
+     * @throws IOException any IOException encountered during processing
+     */
+    public abstract void map(RecordBatch<KI, VI> batch, BatchContext<KO, VO> context) throws IOException;
+
+    /**
+     * Maps a single record as a batch of one, where the framework does not
+     * batch the input.
+     */
+    @Override
+    public final void map(KI key, VI value, final Context<KO, VO> context) throws IOException {
+        RecordBatch<KI, VI> batch = new RecordBatch<KI, VI>(1);
+        batch.add(key, value);
+        map(batch, new BatchContext<KO, VO>() {
+            @Override
+            public void write(KO key, VO value) throws IOException {
+                context.write(key, value);
+            }
+
+            @Override
+            public void write(RecordBatch<KO, VO> batch) throws IOException {
+                for (int i = 0; i < batch.size(); i++)
+                    context.write(batch.getKey(i), batch.getValue(i));
+            }
+        });
+    }
+
+}
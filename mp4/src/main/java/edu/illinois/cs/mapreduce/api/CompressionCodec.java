@@ -0,0 +1,37 @@
+package edu.illinois.cs.mapreduce.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Compresses intermediate data. The framework uses the codec named by the
+ * 'map.output.compression.codec' job property to compress map output files,
+ * which are stored on the map node and copied to the reduce nodes. Closing a
+ * stream returned by the codec closes the underlying stream. Implementations
+ * must be thread safe and must have a public no-argument constructor.
+ * 
+ * @author benjamin
+ */
+public interface CompressionCodec {
+
+    /**
+     * Returns a stream that compresses the data written to it.
+     * 
+     * @param os stream receiving the compressed data
+     * @return compressing stream
+     * @throws IOException if the stream cannot be created
+     */
+    OutputStream createOutputStream(OutputStream os) throws IOException;
+
+    /**
+     * Returns a stream that decompresses data written by a stream of
+     * {@link #createOutputStream(OutputStream)}.
+     * 
+     * @param is stream providing the compressed data
+     * @return decompressing stream
+     * @throws IOException if the stream cannot be created
+     */
+    InputStream createInputStream(InputStream is) throws IOException;
+
+}
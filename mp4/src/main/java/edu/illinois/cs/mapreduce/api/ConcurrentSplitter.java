@@ -0,0 +1,42 @@
+package edu.illinois.cs.mapreduce.api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A splitter that can determine the extent of its splits before writing them,
+ * and can write several splits at the same time. The job manager uses it to
+ * upload splits to several nodes concurrently.
+ * 
+ * @author benjamin
+ * @param <S> Type of Split created by this Splitter
+ */
+public abstract class ConcurrentSplitter<S extends Split> extends Splitter<S> {
+
+    /**
+     * Returns the next split without writing its data, and sets
+     * {@link #eof} after the last split. Only called by a single thread.
+     * 
+     * @return Split describing the next split
+     * @throws IOException If an error occurred reading the input
+     */
+    public abstract S nextSplit() throws IOException;
+
+    /**
+     * Writes the data of a split returned by {@link #nextSplit()} to the
+     * given OutputStream. May be called concurrently for different splits.
+     * 
+     * @param split split to write
+     * @param os OutputStream to write to
+     * @throws IOException If an error occurred writing the split
+     */
+    public abstract void writeSplit(S split, OutputStream os) throws IOException;
+
+    @Override
+    public S writeSplit(OutputStream os) throws IOException {
+        S split = nextSplit();
+        writeSplit(split, os);
+        return split;
+    }
+
+}
@@ -5,6 +5,13 @@ import java.io.IOException;
 /**
  * Context passed to map and reduce functions by the framework. The context is
  * used to store results and report status.
+ * <p>
+ * The context is done with a key and value when {@link #write} returns: it
+ * serializes them, or copies those it keeps in memory. Callers may therefore
+ * write the same mutable instances, such as
+ * {@link edu.illinois.cs.mapreduce.api.lib.LongValue}, for every record and
+ * change them between writes.
+ * </p>
  * 
  * @author benjamin
  * @param <K> type of keys stored in this context
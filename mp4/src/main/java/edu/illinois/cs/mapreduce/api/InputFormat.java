@@ -15,7 +15,9 @@ import java.util.Properties;
 public abstract class InputFormat<K, V, S extends Split> {
 
     /**
-     * Returns a Splitter for the given InputStream and Job Properties.
+     * Returns a Splitter for the given InputStream and Job Properties. The job
+     * manager passes an unbuffered {@link java.io.FileInputStream}, so the
+     * splitter may use its channel or buffer the stream as needed.
      * 
      * @param is InputStream to split
      * @param properties Properties containing job configuration
@@ -25,6 +27,8 @@ public abstract class InputFormat<K, V, S extends Split> {
 
     /**
      * Returns a RecordReader for the given InputStream described by the Split.
+     * The task passes an unbuffered {@link java.io.FileInputStream} of the
+     * local split file, so the reader may map its channel into memory.
      * 
      * @param split Split describing the current split being read
      * @param is InputStream holding the data of the split
@@ -0,0 +1,23 @@
+package edu.illinois.cs.mapreduce.api;
+
+/**
+ * Iterates over primitive long values without boxing them.
+ * 
+ * @author benjamin
+ */
+public interface LongIterator {
+
+    /**
+     * @return true if there are more values
+     */
+    boolean hasNext();
+
+    /**
+     * returns the next value
+     * 
+     * @return value
+     * @throws java.util.NoSuchElementException if there are no more values
+     */
+    long next();
+
+}
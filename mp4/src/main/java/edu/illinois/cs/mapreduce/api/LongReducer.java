@@ -0,0 +1,55 @@
+package edu.illinois.cs.mapreduce.api;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * A reducer for numeric values, such as counts and sums. The framework
+ * decodes the serialized values straight into primitives, see
+ * {@link Serialization#deserializeLong(byte[], int, int)}, so no values are
+ * boxed between the shuffle and the reduce function. Values may be of any
+ * {@link Number} type, such as Long or
+ * {@link edu.illinois.cs.mapreduce.api.lib.LongValue}.
+ * 
+ * @author benjamin
+ * @param <K> type of the input keys
+ * @param <KO> type of the output keys
+ * @param <VO> type of the output values
+ */
+public abstract class LongReducer<K, KO, VO> extends Reducer<K, Long, KO, VO> {
+
+    /**
+     * reduces the given key and values to one or more output key/value pairs.
+     * The values can only be iterated once, and may not be used after this
+     * method returns.
+     * 
+     * @param key key for the values
+     * @param values values to reduce
+     * @param context context for storing results and reporting status
+     * @throws IOException if an error occurred reducing the current key and
+     *             values
+     */
+    public abstract void reduce(K key, LongIterator values, Context<KO, VO> context) throws IOException;
+
+    /**
+     * Reduces values the framework holds as objects, by converting each of
+     * them on iteration.
+     */
+    @Override
+    public final void reduce(K key, Iterable<Long> values, Context<KO, VO> context) throws IOException {
+        // values may be any Number at runtime
+        final Iterator<?> iterator = values.iterator();
+        reduce(key, new LongIterator() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public long next() {
+                return ((Number)iterator.next()).longValue();
+            }
+        }, context);
+    }
+
+}
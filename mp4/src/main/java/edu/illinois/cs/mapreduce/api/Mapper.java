@@ -15,6 +15,20 @@ import java.io.IOException;
  */
 public abstract class Mapper<KI, VI, KO, VO> {
 
+    /**
+     * Called once per task attempt before the first record is mapped. Mappers
+     * can read the job properties and create state here, such as a table in
+     * which they combine their output before writing it, sized by the task's
+     * memory budget. Does nothing by default.
+     * 
+     * @param context context the mapper writes to
+     * @param task task attempt, which provides the job properties and a
+     *            memory budget
+     * @throws IOException any IOException encountered during setup
+     */
+    public void setup(Context<KO, VO> context, TaskContext task) throws IOException {
+    }
+
     /**
      * @param key input key to the map function
      * @param value input value to the map function
@@ -24,4 +38,15 @@ public abstract class Mapper<KI, VI, KO, VO> {
      */
     public abstract void map(KI key, VI value, Context<KO, VO> context) throws IOException;
 
+    /**
+     * Called once per task attempt after the last record has been mapped,
+     * unless mapping failed. Mappers that combine their output in memory write
+     * out what they still hold here. Does nothing by default.
+     * 
+     * @param context context the mapper writes to
+     * @throws IOException any IOException encountered during cleanup
+     */
+    public void cleanup(Context<KO, VO> context) throws IOException {
+    }
+
 }
@@ -0,0 +1,25 @@
+package edu.illinois.cs.mapreduce.api;
+
+/**
+ * A raw comparator that can also map a serialized key to a fixed-width
+ * normalized prefix. The framework sorts intermediate keys by their prefixes
+ * first and only compares the serialized keys if the prefixes are equal.
+ * Prefixes are compared as unsigned 64 bit values. If two prefixes differ,
+ * their order must be the order of the keys.
+ * 
+ * @author benjamin
+ * @param <T> type of objects compared
+ */
+public interface NormalizedKeyComparator<T> extends RawComparator<T> {
+
+    /**
+     * Returns the normalized prefix of a serialized object.
+     * 
+     * @param b array holding the object
+     * @param s offset of the object
+     * @param l length of the object
+     * @return prefix that orders like the object, as an unsigned value
+     */
+    long getPrefix(byte[] b, int s, int l);
+
+}
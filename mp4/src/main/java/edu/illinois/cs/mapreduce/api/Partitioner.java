@@ -0,0 +1,23 @@
+package edu.illinois.cs.mapreduce.api;
+
+/**
+ * Assigns intermediate key/value pairs to reduce tasks. All pairs with the same
+ * key must be assigned to the same partition.
+ * 
+ * @author benjamin
+ * @param <K> type of intermediate keys
+ * @param <V> type of intermediate values
+ */
+public abstract class Partitioner<K, V> {
+
+    /**
+     * Returns the partition for the given key/value pair.
+     * 
+     * @param key intermediate key
+     * @param value intermediate value
+     * @param numPartitions number of reduce tasks of the job
+     * @return partition in the range [0, numPartitions)
+     */
+    public abstract int getPartition(K key, V value, int numPartitions);
+
+}
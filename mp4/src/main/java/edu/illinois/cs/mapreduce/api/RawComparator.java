@@ -0,0 +1,30 @@
+package edu.illinois.cs.mapreduce.api;
+
+import java.util.Comparator;
+
+/**
+ * A comparator that can compare objects directly in their serialized form. The
+ * framework uses it to sort and merge intermediate keys without deserializing
+ * them. The byte-wise comparison must be consistent with the object
+ * comparison. Implementations must be thread safe.
+ * 
+ * @author benjamin
+ * @param <T> type of objects compared
+ */
+public interface RawComparator<T> extends Comparator<T> {
+
+    /**
+     * Compares two serialized objects.
+     * 
+     * @param b1 array holding the first object
+     * @param s1 offset of the first object
+     * @param l1 length of the first object
+     * @param b2 array holding the second object
+     * @param s2 offset of the second object
+     * @param l2 length of the second object
+     * @return a negative integer, zero, or a positive integer as the first
+     *         object is less than, equal to, or greater than the second
+     */
+    int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2);
+
+}
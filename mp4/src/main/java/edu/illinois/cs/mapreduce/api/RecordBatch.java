@@ -0,0 +1,97 @@
+package edu.illinois.cs.mapreduce.api;
+
+/**
+ * A reusable batch of key/value records. Batches are filled by a
+ * {@link RecordReader}, passed to a {@link BatchMapper} and written to a
+ * {@link BatchContext}. Clearing a batch keeps the records it held as spares,
+ * so that readers which reuse objects can fill each slot in place instead of
+ * allocating new keys and values.
+ * 
+ * @author benjamin
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class RecordBatch<K, V> {
+
+    private final Object[] keys;
+    private final Object[] values;
+    private int size;
+
+    /**
+     * @param capacity maximum number of records in the batch
+     */
+    public RecordBatch(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive");
+        this.keys = new Object[capacity];
+        this.values = new Object[capacity];
+    }
+
+    /**
+     * Appends a record to the batch.
+     * 
+     * @throws IllegalStateException if the batch is full
+     */
+    public void add(K key, V value) {
+        if (size == keys.length)
+            throw new IllegalStateException("batch is full");
+        keys[size] = key;
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * Removes all records. The records stay available as spares.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    public boolean isFull() {
+        return size == keys.length;
+    }
+
+    @SuppressWarnings("unchecked")
+    public K getKey(int i) {
+        checkIndex(i);
+        return (K)keys[i];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V getValue(int i) {
+        checkIndex(i);
+        return (V)values[i];
+    }
+
+    /**
+     * Returns the key that was held in the slot of the next record before the
+     * batch was cleared, or null.
+     */
+    @SuppressWarnings("unchecked")
+    public K getSpareKey() {
+        return size < keys.length ? (K)keys[size] : null;
+    }
+
+    /**
+     * Returns the value that was held in the slot of the next record before
+     * the batch was cleared, or null.
+     */
+    @SuppressWarnings("unchecked")
+    public V getSpareValue() {
+        return size < values.length ? (V)values[size] : null;
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= size)
+            throw new IndexOutOfBoundsException("index " + i + ", size " + size);
+    }
+
+}
@@ -34,4 +34,36 @@ public abstract class RecordReader<K, V> implements Closeable {
      */
     public abstract V getValue();
 
+    /**
+     * clears the given batch and fills it with the following records, up to
+     * its capacity. The default implementation adds the keys and values of
+     * successive calls to {@link #next()}; readers that reuse objects must
+     * override it to fill the spare records of the batch instead.
+     * 
+     * @param batch batch to fill
+     * @return true if at least one record was read
+     * @throws IOException if an IO error occurred reading the records
+     */
+    public boolean next(RecordBatch<K, V> batch) throws IOException {
+        if (reusesObjects())
+            throw new UnsupportedOperationException(getClass().getName() + " cannot fill batches");
+        batch.clear();
+        while (!batch.isFull() && next())
+            batch.add(getKey(), getValue());
+        return batch.size() > 0;
+    }
+
+    /**
+     * returns true if the reader returns the same key and value instances for
+     * every record, changing their contents on each call to {@link #next()}.
+     * The framework then only reads records ahead or hands them to other
+     * threads through {@link #next(RecordBatch)}, and mappers must copy keys
+     * or values they keep beyond the current call.
+     * 
+     * @return true if keys and values are reused
+     */
+    public boolean reusesObjects() {
+        return false;
+    }
+
 }
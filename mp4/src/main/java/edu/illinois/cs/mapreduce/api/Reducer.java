@@ -13,9 +13,28 @@ import java.io.IOException;
  */
 public abstract class Reducer<KI, VI, KO, VO> {
 
+    /**
+     * Called once per reduce task attempt before the first key is reduced.
+     * Reducers that are used as combiners are neither set up nor cleaned up.
+     * Does nothing by default.
+     * 
+     * @param context context the reducer writes to
+     * @param task task attempt, which provides the job properties and a
+     *            memory budget
+     * @throws IOException any IOException encountered during setup
+     */
+    public void setup(Context<KO, VO> context, TaskContext task) throws IOException {
+    }
+
     /**
      * reduces the given key and set of values to one or more output key/value
-     * pairs
+     * pairs. The values are read from the sorted input as they are iterated
+     * over and can only be iterated once, unless the job sets the
+     * 'reduce.values.markable' property. Neither the values nor their iterator
+     * may be used after this method returns. If the job sets the
+     * 'job.object.reuse' property, the key and the values may be instances
+     * that are changed by the next iteration or call, and must be copied if
+     * they are kept.
      * 
      * @param key key for the values
      * @param values set of values to reduce
@@ -25,4 +44,14 @@ public abstract class Reducer<KI, VI, KO, VO> {
      */
     public abstract void reduce(KI key, Iterable<VI> values, Context<KO, VO> context) throws IOException;
 
+    /**
+     * Called once per reduce task attempt after the last key has been
+     * reduced, unless reducing failed. Does nothing by default.
+     * 
+     * @param context context the reducer writes to
+     * @throws IOException any IOException encountered during cleanup
+     */
+    public void cleanup(Context<KO, VO> context) throws IOException {
+    }
+
 }
@@ -0,0 +1,129 @@
+package edu.illinois.cs.mapreduce.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Converts intermediate keys and values to and from their binary
+ * representation. The framework uses the serialization declared in the job
+ * manifest to write map output, spills and shuffle data. Implementations must
+ * be thread safe and must produce the same encoding on every node.
+ * 
+ * @author benjamin
+ */
+public abstract class Serialization {
+
+    /**
+     * Writes the given object to the output.
+     * 
+     * @param object object to write, may be null
+     * @param out output to write to
+     * @throws IOException if the object cannot be written
+     */
+    public abstract void serialize(Object object, DataOutput out) throws IOException;
+
+    /**
+     * Reads the next object from the input.
+     * 
+     * @param in input to read from
+     * @return the object read, may be null
+     * @throws IOException if the object cannot be read
+     */
+    public abstract Object deserialize(DataInput in) throws IOException;
+
+    /**
+     * Reads the next object from the input, reusing the given object if
+     * possible. Implementations may read into <code>reuse</code> and return it
+     * if it is a mutable instance of the type read. The framework only passes
+     * objects for reuse if the job enables object reuse. The default
+     * implementation ignores <code>reuse</code>.
+     * 
+     * @param in input to read from
+     * @param reuse object previously returned by this method, or null
+     * @return the object read, may be null
+     * @throws IOException if the object cannot be read
+     */
+    public Object deserialize(DataInput in, Object reuse) throws IOException {
+        return deserialize(in);
+    }
+
+    /**
+     * Reads a numeric object from its serialized form and returns its value as
+     * a long, for {@link LongReducer}s. The default implementation
+     * deserializes the object, which must be a {@link Number}. Subclasses
+     * should decode their numeric types without creating objects.
+     * 
+     * @param b array holding the serialized object
+     * @param off offset of the object in the array
+     * @param len length of the serialized object
+     * @return the value of the object
+     * @throws IOException if the object cannot be read or is not a number
+     */
+    public long deserializeLong(byte[] b, int off, int len) throws IOException {
+        Object object = deserialize(new DataInputStream(new ByteArrayInputStream(b, off, len)));
+        if (!(object instanceof Number))
+            throw new IOException("not a number: " + object);
+        return ((Number)object).longValue();
+    }
+
+    /**
+     * Returns an object equal to the given one that is not changed if the
+     * given object is. The framework copies the keys and values it has to
+     * keep in memory, since callers may change them after writing them. The
+     * default implementation serializes and deserializes the object;
+     * subclasses should return immutable objects as they are.
+     * 
+     * @param object object to copy, may be null
+     * @return the copy
+     * @throws IOException if the object cannot be serialized
+     */
+    public Object copy(Object object) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        serialize(object, new DataOutputStream(bos));
+        return deserialize(new DataInputStream(new ByteArrayInputStream(bos.toByteArray())));
+    }
+
+    /**
+     * Returns the comparator used to sort keys if the job does not declare
+     * one. The default implementation deserializes both keys and compares them
+     * as {@link Comparable}s. Subclasses should return a comparator that works
+     * on the serialized form.
+     * 
+     * @return comparator for keys written by this serialization
+     */
+    public RawComparator<Object> getRawComparator() {
+        return new DeserializingComparator(this);
+    }
+
+    private static class DeserializingComparator implements RawComparator<Object> {
+
+        private final Serialization serialization;
+
+        DeserializingComparator(Serialization serialization) {
+            this.serialization = serialization;
+        }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            try {
+                Object o1 = serialization.deserialize(new DataInputStream(new ByteArrayInputStream(b1, s1, l1)));
+                Object o2 = serialization.deserialize(new DataInputStream(new ByteArrayInputStream(b2, s2, l2)));
+                return compare(o1, o2);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public int compare(Object o1, Object o2) {
+            return ((Comparable<Object>)o1).compareTo(o2);
+        }
+    }
+
+}
@@ -0,0 +1,35 @@
+package edu.illinois.cs.mapreduce.api;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Binary encoder for a single type. Serializers are registered with a
+ * {@link edu.illinois.cs.mapreduce.api.lib.BinarySerialization} to give user
+ * types a compact encoding.
+ * 
+ * @author benjamin
+ * @param <T> type encoded by this serializer
+ */
+public abstract class Serializer<T> {
+
+    /**
+     * Writes the given non-null object to the output.
+     * 
+     * @param t object to write
+     * @param out output to write to
+     * @throws IOException if the object cannot be written
+     */
+    public abstract void serialize(T t, DataOutput out) throws IOException;
+
+    /**
+     * Reads an object previously written by {@link #serialize}.
+     * 
+     * @param in input to read from
+     * @return object read
+     * @throws IOException if the object cannot be read
+     */
+    public abstract T deserialize(DataInput in) throws IOException;
+
+}
@@ -0,0 +1,40 @@
+package edu.illinois.cs.mapreduce.api;
+
+import java.util.Properties;
+
+/**
+ * Describes the task attempt that a {@link Mapper} or {@link Reducer} is set
+ * up for.
+ * 
+ * @author benjamin
+ */
+public class TaskContext {
+
+    private final Properties properties;
+    private final long memoryBudget;
+
+    public TaskContext(Properties properties, long memoryBudget) {
+        this.properties = properties;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Returns the job properties.
+     */
+    public Properties getProperties() {
+        return properties;
+    }
+
+    /**
+     * Returns the number of bytes of heap that the mapper or reducer may fill
+     * with state it keeps across calls, such as a table of partial aggregates
+     * that a mapper writes out whenever it outgrows the budget, and once more
+     * in {@link Mapper#cleanup}. The budget is a hint for the size of objects
+     * on the heap and is not enforced. It is set by the 'task.memory.budget'
+     * property, and shared equally by mappers that run on several threads.
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+}
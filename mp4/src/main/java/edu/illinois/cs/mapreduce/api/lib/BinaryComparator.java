@@ -0,0 +1,145 @@
+package edu.illinois.cs.mapreduce.api.lib;
+
+import static edu.illinois.cs.mapreduce.api.lib.BinarySerialization.BYTES;
+import static edu.illinois.cs.mapreduce.api.lib.BinarySerialization.DOUBLE_VALUE;
+import static edu.illinois.cs.mapreduce.api.lib.BinarySerialization.INTEGER;
+import static edu.illinois.cs.mapreduce.api.lib.BinarySerialization.INT_VALUE;
+import static edu.illinois.cs.mapreduce.api.lib.BinarySerialization.LONG;
+import static edu.illinois.cs.mapreduce.api.lib.BinarySerialization.LONG_VALUE;
+import static edu.illinois.cs.mapreduce.api.lib.BinarySerialization.NULL;
+import static edu.illinois.cs.mapreduce.api.lib.BinarySerialization.STRING;
+import static edu.illinois.cs.mapreduce.api.lib.BinarySerialization.TEXT;
+
+import edu.illinois.cs.mapreduce.api.NormalizedKeyComparator;
+import edu.illinois.cs.mapreduce.api.RawComparator;
+
+/**
+ * Default comparator for keys written by {@link BinarySerialization}. Longs,
+ * integers, strings, byte arrays and the mutable value types are compared in
+ * their serialized form.
+ * Keys of different types are ordered by type tag. All other keys are
+ * deserialized and compared as {@link Comparable}s by the fallback comparator.
+ * Normalized prefixes hold the type tag in the first byte, followed by the
+ * leading bytes of the value.
+ * 
+ * @author benjamin
+ */
+public class BinaryComparator implements NormalizedKeyComparator<Object> {
+
+    private final RawComparator<Object> fallback;
+
+    public BinaryComparator(RawComparator<Object> fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+        byte tag = b1[s1];
+        if (tag != b2[s2])
+            return tag < b2[s2] ? -1 : 1;
+        switch (tag) {
+            case NULL:
+                return 0;
+            case LONG:
+            case LONG_VALUE:
+                return LongComparator.compareLongs(readLong(b1, s1 + 1), readLong(b2, s2 + 1));
+            case DOUBLE_VALUE:
+                return LongComparator.compareLongs(readDouble(b1, s1 + 1), readDouble(b2, s2 + 1));
+            case INTEGER:
+            case INT_VALUE:
+                int i1 = readInt(b1, s1 + 1), i2 = readInt(b2, s2 + 1);
+                return i1 < i2 ? -1 : (i1 == i2 ? 0 : 1);
+            case STRING:
+            case BYTES:
+            case TEXT:
+                return compareLengthPrefixed(b1, s1, l1, b2, s2, l2);
+            default:
+                return fallback.compare(b1, s1, l1, b2, s2, l2);
+        }
+    }
+
+    @Override
+    public long getPrefix(byte[] b, int s, int l) {
+        byte tag = b[s];
+        // signed tag order as unsigned top byte
+        long prefix = (long)((tag ^ 0x80) & 0xFF) << 56;
+        switch (tag) {
+            case LONG:
+            case LONG_VALUE:
+                return prefix | (LongComparator.getPrefix(readLong(b, s + 1)) >>> 8);
+            case DOUBLE_VALUE:
+                return prefix | (LongComparator.getPrefix(readDouble(b, s + 1)) >>> 8);
+            case INTEGER:
+            case INT_VALUE:
+                return prefix | ((readInt(b, s + 1) ^ 0x80000000L) & 0xFFFFFFFFL) << 24;
+            case STRING:
+            case BYTES:
+            case TEXT:
+                return prefix | (getLengthPrefixedPrefix(b, s, l) >>> 8);
+            default:
+                return prefix;
+        }
+    }
+
+    @Override
+    public int compare(Object o1, Object o2) {
+        if (o1 instanceof String && o2 instanceof String)
+            return StringComparator.compareStrings((String)o1, (String)o2);
+        return fallback.compare(o1, o2);
+    }
+
+    /**
+     * Compares two tagged, length-prefixed byte sequences by their content.
+     */
+    static int compareLengthPrefixed(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+        int h1 = 1 + VarInt.getVIntSize(VarInt.readVInt(b1, s1 + 1));
+        int h2 = 1 + VarInt.getVIntSize(VarInt.readVInt(b2, s2 + 1));
+        return compareBytes(b1, s1 + h1, l1 - h1, b2, s2 + h2, l2 - h2);
+    }
+
+    /**
+     * Returns the first eight content bytes of a tagged, length-prefixed byte
+     * sequence as a big endian long, padded with zeros.
+     */
+    static long getLengthPrefixedPrefix(byte[] b, int s, int l) {
+        int h = 1 + VarInt.getVIntSize(VarInt.readVInt(b, s + 1));
+        int n = Math.min(8, l - h);
+        long prefix = 0;
+        for (int i = 0; i < n; i++)
+            prefix |= (long)(b[s + h + i] & 0xFF) << (56 - 8 * i);
+        return prefix;
+    }
+
+    /**
+     * Lexicographically compares two byte ranges as unsigned bytes.
+     */
+    public static int compareBytes(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+        int n = Math.min(l1, l2);
+        for (int i = 0; i < n; i++) {
+            int a = b1[s1 + i] & 0xFF;
+            int b = b2[s2 + i] & 0xFF;
+            if (a != b)
+                return a - b;
+        }
+        return l1 - l2;
+    }
+
+    /**
+     * Reads the bits of a double and flips them so that they compare as longs
+     * like {@link Double#compare(double, double)}: negative values have all
+     * bits but the sign flipped, which reverses their order.
+     */
+    static long readDouble(byte[] b, int off) {
+        long bits = readLong(b, off);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    public static long readLong(byte[] b, int off) {
+        return ((long)readInt(b, off) << 32) | (readInt(b, off + 4) & 0xFFFFFFFFL);
+    }
+
+    public static int readInt(byte[] b, int off) {
+        return ((b[off] & 0xFF) << 24) | ((b[off + 1] & 0xFF) << 16) | ((b[off + 2] & 0xFF) << 8) | (b[off + 3] & 0xFF);
+    }
+
+}
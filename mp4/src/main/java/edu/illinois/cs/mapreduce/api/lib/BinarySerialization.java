@@ -0,0 +1,246 @@
+package edu.illinois.cs.mapreduce.api.lib;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.illinois.cs.mapreduce.api.RawComparator;
+import edu.illinois.cs.mapreduce.api.Serialization;
+import edu.illinois.cs.mapreduce.api.Serializer;
+
+/**
+ * Compact binary serialization. Each object is written as a one byte type tag
+ * followed by its encoding:
+ * <ul>
+ * <li>Long: 8 bytes</li>
+ * <li>Integer: 4 bytes</li>
+ * <li>String: length-prefixed UTF-8 bytes</li>
+ * <li>byte[]: length-prefixed bytes</li>
+ * <li>LongValue, IntValue and DoubleValue: 8, 4 and 8 bytes</li>
+ * <li>Text: length-prefixed UTF-8 bytes</li>
+ * <li>registered types: the encoding of the registered {@link Serializer}</li>
+ * <li>any other type: length-prefixed Java serialization</li>
+ * </ul>
+ * Jobs can register serializers for their own types by subclassing this class,
+ * calling {@link #register(Class, Serializer)} from the constructor and
+ * declaring the subclass as 'SerializationClass' in the job manifest. Tags are
+ * assigned in registration order, so all nodes must register the same types in
+ * the same order.
+ * <p>
+ * The mutable types {@link LongValue}, {@link IntValue}, {@link DoubleValue}
+ * and {@link Text} are read into the object passed for reuse, and Text is
+ * never decoded, so reading them allocates nothing. Immutable types are not
+ * copied by {@link #copy(Object)}.
+ * </p>
+ * 
+ * @author benjamin
+ */
+public class BinarySerialization extends Serialization {
+
+    protected static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public static final byte NULL = 0;
+    public static final byte LONG = 1;
+    public static final byte INTEGER = 2;
+    public static final byte STRING = 3;
+    public static final byte BYTES = 4;
+    public static final byte JAVA = 5;
+    public static final byte LONG_VALUE = 6;
+    public static final byte INT_VALUE = 7;
+    public static final byte DOUBLE_VALUE = 8;
+    public static final byte TEXT = 9;
+    private static final int FIRST_USER_TAG = 16;
+
+    private final Map<Class<?>, Byte> tags;
+    private final List<Serializer<?>> serializers;
+
+    public BinarySerialization() {
+        this.tags = new HashMap<Class<?>, Byte>();
+        this.serializers = new ArrayList<Serializer<?>>();
+        tags.put(Long.class, LONG);
+        tags.put(Integer.class, INTEGER);
+        tags.put(String.class, STRING);
+        tags.put(byte[].class, BYTES);
+        tags.put(LongValue.class, LONG_VALUE);
+        tags.put(IntValue.class, INT_VALUE);
+        tags.put(DoubleValue.class, DOUBLE_VALUE);
+        tags.put(Text.class, TEXT);
+    }
+
+    /**
+     * Registers a serializer for the given type. Only objects of exactly this
+     * class are encoded with the serializer, subclasses are not.
+     * 
+     * @param type class to register
+     * @param serializer serializer for the class
+     */
+    protected synchronized <T> void register(Class<T> type, Serializer<T> serializer) {
+        int tag = FIRST_USER_TAG + serializers.size();
+        if (tag > Byte.MAX_VALUE)
+            throw new IllegalStateException("too many registered types");
+        if (tags.containsKey(type))
+            throw new IllegalArgumentException(type + " already registered");
+        tags.put(type, (byte)tag);
+        serializers.add(serializer);
+    }
+
+    @Override
+    public void serialize(Object object, DataOutput out) throws IOException {
+        if (object == null) {
+            out.writeByte(NULL);
+            return;
+        }
+        Byte tag = tags.get(object.getClass());
+        if (tag == null) {
+            out.writeByte(JAVA);
+            JavaSerialization.write(object, out);
+            return;
+        }
+        out.writeByte(tag);
+        switch (tag) {
+            case LONG:
+                out.writeLong((Long)object);
+                break;
+            case INTEGER:
+                out.writeInt((Integer)object);
+                break;
+            case STRING:
+                writeBytes(((String)object).getBytes(UTF8), out);
+                break;
+            case BYTES:
+                writeBytes((byte[])object, out);
+                break;
+            case LONG_VALUE:
+                out.writeLong(((LongValue)object).get());
+                break;
+            case INT_VALUE:
+                out.writeInt(((IntValue)object).get());
+                break;
+            case DOUBLE_VALUE:
+                out.writeLong(Double.doubleToLongBits(((DoubleValue)object).get()));
+                break;
+            case TEXT:
+                Text text = (Text)object;
+                VarInt.writeVInt(out, text.getLength());
+                out.write(text.getBytes(), 0, text.getLength());
+                break;
+            default:
+                @SuppressWarnings("unchecked")
+                Serializer<Object> serializer = (Serializer<Object>)serializers.get(tag - FIRST_USER_TAG);
+                serializer.serialize(object, out);
+        }
+    }
+
+    @Override
+    public Object deserialize(DataInput in) throws IOException {
+        return deserialize(in, null);
+    }
+
+    @Override
+    public Object deserialize(DataInput in, Object reuse) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case LONG:
+                return in.readLong();
+            case INTEGER:
+                return in.readInt();
+            case STRING:
+                return new String(readBytes(in), UTF8);
+            case BYTES:
+                return readBytes(in);
+            case LONG_VALUE:
+                LongValue longValue = reuse instanceof LongValue ? (LongValue)reuse : new LongValue();
+                longValue.set(in.readLong());
+                return longValue;
+            case INT_VALUE:
+                IntValue intValue = reuse instanceof IntValue ? (IntValue)reuse : new IntValue();
+                intValue.set(in.readInt());
+                return intValue;
+            case DOUBLE_VALUE:
+                DoubleValue doubleValue = reuse instanceof DoubleValue ? (DoubleValue)reuse : new DoubleValue();
+                doubleValue.set(Double.longBitsToDouble(in.readLong()));
+                return doubleValue;
+            case TEXT:
+                Text text = reuse instanceof Text ? (Text)reuse : new Text();
+                int length = VarInt.readVInt(in);
+                in.readFully(text.reserve(length), 0, length);
+                return text;
+            case JAVA:
+                return JavaSerialization.read(in);
+            default:
+                int index = tag - FIRST_USER_TAG;
+                if (index < 0 || index >= serializers.size())
+                    throw new IOException("unknown type tag " + tag);
+                return serializers.get(index).deserialize(in);
+        }
+    }
+
+    @Override
+    public long deserializeLong(byte[] b, int off, int len) throws IOException {
+        switch (b[off]) {
+            case LONG:
+            case LONG_VALUE:
+                return BinaryComparator.readLong(b, off + 1);
+            case INTEGER:
+            case INT_VALUE:
+                return BinaryComparator.readInt(b, off + 1);
+            default:
+                return super.deserializeLong(b, off, len);
+        }
+    }
+
+    @Override
+    public Object copy(Object object) throws IOException {
+        if (object == null)
+            return null;
+        Byte tag = tags.get(object.getClass());
+        if (tag == null)
+            return super.copy(object);
+        switch (tag) {
+            case LONG:
+            case INTEGER:
+            case STRING:
+                return object;
+            case BYTES:
+                return ((byte[])object).clone();
+            case LONG_VALUE:
+                return new LongValue(((LongValue)object).get());
+            case INT_VALUE:
+                return new IntValue(((IntValue)object).get());
+            case DOUBLE_VALUE:
+                return new DoubleValue(((DoubleValue)object).get());
+            case TEXT:
+                return new Text((Text)object);
+            default:
+                return super.copy(object);
+        }
+    }
+
+    /**
+     * Returns a {@link BinaryComparator} that falls back to the default
+     * deserializing comparator for registered and Java serialized types.
+     */
+    @Override
+    public RawComparator<Object> getRawComparator() {
+        return new BinaryComparator(super.getRawComparator());
+    }
+
+    private static void writeBytes(byte[] bytes, DataOutput out) throws IOException {
+        VarInt.writeVInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInput in) throws IOException {
+        byte[] bytes = new byte[VarInt.readVInt(in)];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+}
@@ -0,0 +1,81 @@
+package edu.illinois.cs.mapreduce.api.lib;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import edu.illinois.cs.mapreduce.api.ConcurrentSplitter;
+
+/**
+ * Splits a text file into byte ranges of a configurable size. Each split ends
+ * with the first newline at or after the last byte of its nominal range, so
+ * lines are never broken up. The file is never decoded: the splitter only scans
+ * for the newline and copies each range with {@link FileChannel#transferTo}. As
+ * the ranges are known before they are copied, several splits can be written
+ * concurrently.
+ * 
+ * @author benjamin
+ */
+public class ByteRangeTextSplitter extends ConcurrentSplitter<TextSplit> {
+
+    private static final int SCAN_BUFFER_SIZE = 8192;
+
+    private final FileChannel channel;
+    private final long bytesPerSplit;
+    private final ByteBuffer scanBuffer;
+    private long position;
+
+    public ByteRangeTextSplitter(FileChannel channel, long bytesPerSplit) {
+        if (bytesPerSplit < 1)
+            throw new IllegalArgumentException("invalid bytes per split: " + bytesPerSplit);
+        this.channel = channel;
+        this.bytesPerSplit = bytesPerSplit;
+        this.scanBuffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+    }
+
+    @Override
+    public TextSplit nextSplit() throws IOException {
+        long size = channel.size();
+        long start = position;
+        long end = start + bytesPerSplit < size ? findLineEnd(start + bytesPerSplit - 1, size) : size;
+        position = end;
+        eof = end >= size;
+        return new TextSplit(start, end - start);
+    }
+
+    @Override
+    public void writeSplit(TextSplit split, OutputStream os) throws IOException {
+        WritableByteChannel target = Channels.newChannel(os);
+        long end = split.getStart() + split.getLength();
+        for (long offset = split.getStart(); offset < end;) {
+            long n = channel.transferTo(offset, end - offset, target);
+            if (n <= 0)
+                throw new IOException("could not transfer input at offset " + offset);
+            offset += n;
+        }
+        os.flush();
+    }
+
+    /**
+     * Returns the offset after the first newline at or after the given offset,
+     * or the file size if there is none.
+     */
+    private long findLineEnd(long offset, long size) throws IOException {
+        while (offset < size) {
+            scanBuffer.clear();
+            int n = channel.read(scanBuffer, offset);
+            if (n <= 0)
+                break;
+            byte[] bytes = scanBuffer.array();
+            for (int i = 0; i < n; i++)
+                if (bytes[i] == '\n')
+                    return offset + i + 1;
+            offset += n;
+        }
+        return size;
+    }
+
+}
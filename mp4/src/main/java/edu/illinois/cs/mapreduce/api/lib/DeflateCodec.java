@@ -0,0 +1,65 @@
+package edu.illinois.cs.mapreduce.api.lib;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import edu.illinois.cs.mapreduce.api.CompressionCodec;
+
+/**
+ * Compresses with the deflate algorithm of the JDK. The fastest compression
+ * level is used by default, as intermediate data is only kept for the
+ * duration of a job.
+ * 
+ * @author benjamin
+ */
+public class DeflateCodec implements CompressionCodec {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final int level;
+
+    public DeflateCodec() {
+        this(Deflater.BEST_SPEED);
+    }
+
+    public DeflateCodec(int level) {
+        this.level = level;
+    }
+
+    @Override
+    public OutputStream createOutputStream(OutputStream os) {
+        final Deflater deflater = new Deflater(level);
+        return new DeflaterOutputStream(os, deflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    // the stream only ends deflaters it created itself
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    @Override
+    public InputStream createInputStream(InputStream is) {
+        final Inflater inflater = new Inflater();
+        return new InflaterInputStream(is, inflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+}
@@ -0,0 +1,74 @@
+package edu.illinois.cs.mapreduce.api.lib;
+
+/**
+ * A mutable double. Mappers and reducers can write the same instance over and
+ * over, since the framework serializes it on write. {@link BinarySerialization}
+ * encodes it in 8 bytes that compare in their serialized form, in the order of
+ * {@link Double#compare(double, double)}.
+ * 
+ * @author benjamin
+ */
+public class DoubleValue extends Number implements Comparable<DoubleValue> {
+
+    private static final long serialVersionUID = -7412098815406290521L;
+
+    private double value;
+
+    public DoubleValue() {
+    }
+
+    public DoubleValue(double value) {
+        this.value = value;
+    }
+
+    public double get() {
+        return value;
+    }
+
+    public void set(double value) {
+        this.value = value;
+    }
+
+    @Override
+    public int intValue() {
+        return (int)value;
+    }
+
+    @Override
+    public long longValue() {
+        return (long)value;
+    }
+
+    @Override
+    public float floatValue() {
+        return (float)value;
+    }
+
+    @Override
+    public double doubleValue() {
+        return value;
+    }
+
+    @Override
+    public int compareTo(DoubleValue o) {
+        return Double.compare(value, o.value);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof DoubleValue
+            && Double.doubleToLongBits(((DoubleValue)obj).value) == Double.doubleToLongBits(value);
+    }
+
+    @Override
+    public int hashCode() {
+        long bits = Double.doubleToLongBits(value);
+        return (int)(bits ^ (bits >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return Double.toString(value);
+    }
+
+}
@@ -0,0 +1,32 @@
+package edu.illinois.cs.mapreduce.api.lib;
+
+import java.util.Arrays;
+
+import edu.illinois.cs.mapreduce.api.Partitioner;
+
+/**
+ * Partitions keys by their hash code. Byte array keys are hashed by their
+ * content, so that equal keys from different map tasks meet in the same
+ * partition. Other arrays, whose hash codes do not depend on their content,
+ * are rejected.
+ * 
+ * @author benjamin
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class HashPartitioner<K, V> extends Partitioner<K, V> {
+
+    @Override
+    public int getPartition(K key, V value, int numPartitions) {
+        return (hashCode(key) & Integer.MAX_VALUE) % numPartitions;
+    }
+
+    private static int hashCode(Object key) {
+        if (key instanceof byte[])
+            return Arrays.hashCode((byte[])key);
+        if (key.getClass().isArray())
+            throw new IllegalArgumentException("array keys cannot be partitioned by hash: " + key.getClass().getName());
+        return key.hashCode();
+    }
+
+}
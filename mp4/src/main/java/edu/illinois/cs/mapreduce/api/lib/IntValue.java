@@ -0,0 +1,71 @@
+package edu.illinois.cs.mapreduce.api.lib;
+
+/**
+ * A mutable int. Mappers and reducers can write the same instance over and
+ * over, since the framework serializes it on write. {@link BinarySerialization}
+ * encodes it in 4 bytes that compare in their serialized form.
+ * 
+ * @author benjamin
+ */
+public class IntValue extends Number implements Comparable<IntValue> {
+
+    private static final long serialVersionUID = 2959338125377049036L;
+
+    private int value;
+
+    public IntValue() {
+    }
+
+    public IntValue(int value) {
+        this.value = value;
+    }
+
+    public int get() {
+        return value;
+    }
+
+    public void set(int value) {
+        this.value = value;
+    }
+
+    @Override
+    public int intValue() {
+        return value;
+    }
+
+    @Override
+    public long longValue() {
+        return value;
+    }
+
+    @Override
+    public float floatValue() {
+        return value;
+    }
+
+    @Override
+    public double doubleValue() {
+        return value;
+    }
+
+    @Override
+    public int compareTo(IntValue o) {
+        return value < o.value ? -1 : (value == o.value ? 0 : 1);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof IntValue && ((IntValue)obj).value == value;
+    }
+
+    @Override
+    public int hashCode() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return Integer.toString(value);
+    }
+
+}
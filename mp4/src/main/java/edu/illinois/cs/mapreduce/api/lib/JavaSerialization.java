@@ -0,0 +1,80 @@
+package edu.illinois.cs.mapreduce.api.lib;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+
+import edu.illinois.cs.mapreduce.api.Serialization;
+
+/**
+ * Serialization based on standard Java object serialization. Every object is
+ * written as a length-prefixed, self-contained object stream, so this format
+ * carries the full class descriptor per object. It is meant as a fallback for
+ * types that have no compact encoding. Classes are resolved through the
+ * context class loader of the calling thread.
+ * 
+ * @author benjamin
+ */
+public class JavaSerialization extends Serialization {
+
+    @Override
+    public void serialize(Object object, DataOutput out) throws IOException {
+        write(object, out);
+    }
+
+    @Override
+    public Object deserialize(DataInput in) throws IOException {
+        return read(in);
+    }
+
+    static void write(Object object, DataOutput out) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(bytes);
+        try {
+            oos.writeObject(object);
+        } finally {
+            oos.close();
+        }
+        VarInt.writeVInt(out, bytes.size());
+        out.write(bytes.toByteArray());
+    }
+
+    static Object read(DataInput in) throws IOException {
+        byte[] bytes = new byte[VarInt.readVInt(in)];
+        in.readFully(bytes);
+        ObjectInputStream ois = new ContextObjectInputStream(new ByteArrayInputStream(bytes));
+        try {
+            return ois.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        } finally {
+            ois.close();
+        }
+    }
+
+    private static class ContextObjectInputStream extends ObjectInputStream {
+
+        ContextObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            ClassLoader cl = Thread.currentThread().getContextClassLoader();
+            if (cl == null)
+                return super.resolveClass(desc);
+            try {
+                return Class.forName(desc.getName(), false, cl);
+            } catch (ClassNotFoundException e) {
+                return super.resolveClass(desc);
+            }
+        }
+    }
+
+}
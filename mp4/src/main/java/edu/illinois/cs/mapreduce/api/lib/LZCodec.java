@@ -0,0 +1,251 @@
+package edu.illinois.cs.mapreduce.api.lib;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import edu.illinois.cs.mapreduce.api.CompressionCodec;
+
+/**
+ * A fast codec of the LZ77 family. Data is compressed in independent blocks of
+ * 64 KB. Each block is framed as <code>rawLength storedLength bytes</code>
+ * with variable length integers, and the stream ends with a raw length of 0.
+ * A block that does not shrink is stored as is, which is signaled by equal
+ * lengths.
+ * <p>
+ * A compressed block is a sequence of literal runs, each followed by a match:
+ * <code>literalLength literals (matchLength - 4) offset</code>. Matches are
+ * found through a hash table of the last position of each four byte sequence,
+ * without searching for longer matches, which trades ratio for speed. The last
+ * literal run of a block has no match.
+ * </p>
+ * 
+ * @author benjamin
+ */
+public class LZCodec implements CompressionCodec {
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final int MIN_MATCH = 4;
+    private static final int HASH_BITS = 14;
+
+    @Override
+    public OutputStream createOutputStream(OutputStream os) {
+        return new LZOutputStream(os);
+    }
+
+    @Override
+    public InputStream createInputStream(InputStream is) {
+        return new LZInputStream(is);
+    }
+
+    /**
+     * Compresses the first <code>length</code> bytes of the source into the
+     * target, which must hold at least <code>2 * length + 16</code> bytes.
+     * 
+     * @return number of bytes written to the target
+     */
+    static int compress(byte[] src, int length, byte[] dst, int[] table) {
+        Arrays.fill(table, -1);
+        int anchor = 0, out = 0;
+        int i = 0;
+        while (i <= length - MIN_MATCH) {
+            int sequence = BinaryComparator.readInt(src, i);
+            int h = (sequence * 0x9E3779B1) >>> (32 - HASH_BITS);
+            int ref = table[h];
+            table[h] = i;
+            if (ref < 0 || BinaryComparator.readInt(src, ref) != sequence) {
+                i++;
+                continue;
+            }
+            int matchLength = MIN_MATCH;
+            while (i + matchLength < length && src[ref + matchLength] == src[i + matchLength])
+                matchLength++;
+            out = writeLiterals(src, anchor, i - anchor, dst, out);
+            out = VarInt.writeVInt(dst, out, matchLength - MIN_MATCH);
+            out = VarInt.writeVInt(dst, out, i - ref);
+            i += matchLength;
+            anchor = i;
+        }
+        return writeLiterals(src, anchor, length - anchor, dst, out);
+    }
+
+    private static int writeLiterals(byte[] src, int off, int length, byte[] dst, int out) {
+        out = VarInt.writeVInt(dst, out, length);
+        System.arraycopy(src, off, dst, out, length);
+        return out + length;
+    }
+
+    /**
+     * Decompresses a block into the first <code>length</code> bytes of the
+     * target.
+     * 
+     * @throws IOException if the block is corrupt
+     */
+    static void decompress(byte[] src, int srcLength, byte[] dst, int length) throws IOException {
+        int in = 0, out = 0;
+        try {
+            while (true) {
+                int literals = VarInt.readVInt(src, in);
+                in += VarInt.getVIntSize(literals);
+                if (literals < 0 || literals > length - out || literals > srcLength - in)
+                    throw new IOException("corrupt block");
+                System.arraycopy(src, in, dst, out, literals);
+                in += literals;
+                out += literals;
+                if (out == length)
+                    return;
+                int matchLength = VarInt.readVInt(src, in) + MIN_MATCH;
+                in += VarInt.getVIntSize(matchLength - MIN_MATCH);
+                int offset = VarInt.readVInt(src, in);
+                in += VarInt.getVIntSize(offset);
+                if (in > srcLength || offset <= 0 || offset > out || matchLength > length - out)
+                    throw new IOException("corrupt block");
+                // byte by byte, as the match may overlap the bytes it produces
+                for (int i = 0; i < matchLength; i++, out++)
+                    dst[out] = dst[out - offset];
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("corrupt block", e);
+        }
+    }
+
+    private static class LZOutputStream extends OutputStream {
+
+        private final DataOutputStream out;
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private final byte[] compressed = new byte[2 * BLOCK_SIZE + 16];
+        private final int[] table = new int[1 << HASH_BITS];
+        private int length;
+        private boolean closed;
+
+        LZOutputStream(OutputStream os) {
+            this.out = new DataOutputStream(os);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (length == BLOCK_SIZE)
+                writeBlock();
+            block[length++] = (byte)b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (length == BLOCK_SIZE)
+                    writeBlock();
+                int n = Math.min(len, BLOCK_SIZE - length);
+                System.arraycopy(b, off, block, length, n);
+                length += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void writeBlock() throws IOException {
+            if (length == 0)
+                return;
+            int n = compress(block, length, compressed, table);
+            VarInt.writeVInt(out, length);
+            if (n < length) {
+                VarInt.writeVInt(out, n);
+                out.write(compressed, 0, n);
+            } else {
+                VarInt.writeVInt(out, length);
+                out.write(block, 0, length);
+            }
+            length = 0;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writeBlock();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+            closed = true;
+            try {
+                writeBlock();
+                VarInt.writeVInt(out, 0);
+                out.flush();
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    private static class LZInputStream extends InputStream {
+
+        private final DataInputStream in;
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private byte[] compressed = new byte[BLOCK_SIZE];
+        private int position;
+        private int length;
+        private boolean eof;
+
+        LZInputStream(InputStream is) {
+            this.in = new DataInputStream(is);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position == length && !readBlock())
+                return -1;
+            return block[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (position == length && !readBlock())
+                return -1;
+            int n = Math.min(len, length - position);
+            System.arraycopy(block, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return length - position;
+        }
+
+        private boolean readBlock() throws IOException {
+            if (eof)
+                return false;
+            int rawLength = VarInt.readVInt(in);
+            if (rawLength == 0) {
+                eof = true;
+                return false;
+            }
+            int storedLength = VarInt.readVInt(in);
+            if (rawLength < 0 || rawLength > BLOCK_SIZE || storedLength < 0 || storedLength > rawLength)
+                throw new IOException("corrupt block header");
+            if (storedLength == rawLength) {
+                in.readFully(block, 0, rawLength);
+            } else {
+                if (compressed.length < storedLength)
+                    compressed = new byte[storedLength];
+                in.readFully(compressed, 0, storedLength);
+                decompress(compressed, storedLength, block, rawLength);
+            }
+            position = 0;
+            length = rawLength;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+}
@@ -0,0 +1,39 @@
+package edu.illinois.cs.mapreduce.api.lib;
+
+import edu.illinois.cs.mapreduce.api.NormalizedKeyComparator;
+
+/**
+ * Compares Long keys written by {@link BinarySerialization} without
+ * deserializing them. The normalized prefix holds the complete key.
+ * 
+ * @author benjamin
+ */
+public class LongComparator implements NormalizedKeyComparator<Long> {
+
+    @Override
+    public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+        return compareLongs(BinaryComparator.readLong(b1, s1 + 1), BinaryComparator.readLong(b2, s2 + 1));
+    }
+
+    @Override
+    public long getPrefix(byte[] b, int s, int l) {
+        return getPrefix(BinaryComparator.readLong(b, s + 1));
+    }
+
+    @Override
+    public int compare(Long l1, Long l2) {
+        return compareLongs(l1, l2);
+    }
+
+    static int compareLongs(long l1, long l2) {
+        return l1 < l2 ? -1 : (l1 == l2 ? 0 : 1);
+    }
+
+    /**
+     * Flips the sign bit, so that signed order becomes unsigned order.
+     */
+    static long getPrefix(long l) {
+        return l ^ Long.MIN_VALUE;
+    }
+
+}
@@ -0,0 +1,71 @@
+package edu.illinois.cs.mapreduce.api.lib;
+
+/**
+ * A mutable long. Mappers and reducers can write the same instance over and
+ * over, since the framework serializes it on write. {@link BinarySerialization}
+ * encodes it in 8 bytes that compare in their serialized form.
+ * 
+ * @author benjamin
+ */
+public class LongValue extends Number implements Comparable<LongValue> {
+
+    private static final long serialVersionUID = -4181497366383052402L;
+
+    private long value;
+
+    public LongValue() {
+    }
+
+    public LongValue(long value) {
+        this.value = value;
+    }
+
+    public long get() {
+        return value;
+    }
+
+    public void set(long value) {
+        this.value = value;
+    }
+
+    @Override
+    public int intValue() {
+        return (int)value;
+    }
+
+    @Override
+    public long longValue() {
+        return value;
+    }
+
+    @Override
+    public float floatValue() {
+        return value;
+    }
+
+    @Override
+    public double doubleValue() {
+        return value;
+    }
+
+    @Override
+    public int compareTo(LongValue o) {
+        return LongComparator.compareLongs(value, o.value);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof LongValue && ((LongValue)obj).value == value;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int)(value ^ (value >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(value);
+    }
+
+}
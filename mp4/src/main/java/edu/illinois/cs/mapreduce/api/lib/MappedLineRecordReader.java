@@ -0,0 +1,179 @@
+package edu.illinois.cs.mapreduce.api.lib;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import edu.illinois.cs.mapreduce.api.RecordBatch;
+import edu.illinois.cs.mapreduce.api.RecordReader;
+
+/**
+ * Reads line records from a file mapped into memory. Lines are terminated by
+ * '\n', and a preceding '\r' is dropped. The reader searches eight bytes at a
+ * time for line ends, and copies each line into a single {@link Text} that is
+ * reused for all records, so no objects are created per line except the key.
+ * Batches are filled by copying lines into the texts they already hold.
+ * Records are keyed by line number, or by the byte offset of the line if the
+ * split is a byte range.
+ * <p>
+ * The file is mapped in windows of 64 MB, so files of any size can be read.
+ * A window is moved forward to the start of the line that crosses its end.
+ * </p>
+ * 
+ * @author benjamin
+ */
+public class MappedLineRecordReader extends RecordReader<Long, Text> {
+
+    private static final long WINDOW_SIZE = 1L << 26; // 64M
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+    private static final long NEWLINES = ONES * '\n';
+
+    private final FileChannel channel;
+    private final long firstKey;
+    private final boolean byteOffsets;
+    private final long windowSize;
+    private final Text line = new Text();
+    private MappedByteBuffer buffer;
+    private long size;
+    private long base;
+    private int position;
+    private long key;
+
+    /**
+     * @param channel channel of the split file, closed by the reader
+     * @param firstKey key of the first line
+     * @param byteOffsets whether keys advance by line length or by one
+     */
+    public MappedLineRecordReader(FileChannel channel, long firstKey, boolean byteOffsets) {
+        this(channel, firstKey, byteOffsets, WINDOW_SIZE);
+    }
+
+    /**
+     * @param windowSize number of bytes mapped at once
+     */
+    MappedLineRecordReader(FileChannel channel, long firstKey, boolean byteOffsets, long windowSize) {
+        this.channel = channel;
+        this.firstKey = firstKey;
+        this.byteOffsets = byteOffsets;
+        this.windowSize = windowSize;
+        this.key = firstKey - 1;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        return readLine(line);
+    }
+
+    @Override
+    public boolean next(RecordBatch<Long, Text> batch) throws IOException {
+        batch.clear();
+        while (!batch.isFull()) {
+            Text text = batch.getSpareValue();
+            if (text == null)
+                text = new Text();
+            if (!readLine(text))
+                break;
+            batch.add(key, text);
+        }
+        return batch.size() > 0;
+    }
+
+    private boolean readLine(Text text) throws IOException {
+        if (buffer == null) {
+            size = channel.size();
+            map(0, windowSize);
+        }
+        long offset = base + position;
+        int limit = buffer.limit();
+        while (true) {
+            int end = indexOfNewline(position, limit);
+            if (end >= 0) {
+                setLine(text, position, end);
+                position = end + 1;
+                break;
+            }
+            if (base + limit == size) {
+                if (position == limit)
+                    return false;
+                setLine(text, position, limit);
+                position = limit;
+                break;
+            }
+            // the line crosses the end of the window, a line that fills the
+            // whole window needs a larger one
+            if (position == 0 && limit == Integer.MAX_VALUE)
+                throw new IOException("line at offset " + offset + " is too long");
+            long length = position == 0 ? 2L * limit : windowSize;
+            map(base + position, length);
+            limit = buffer.limit();
+        }
+        key = byteOffsets ? firstKey + offset : key + 1;
+        return true;
+    }
+
+    private void map(long offset, long length) throws IOException {
+        length = Math.min(Math.min(length, size - offset), Integer.MAX_VALUE);
+        buffer = channel.map(MapMode.READ_ONLY, offset, length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        base = offset;
+        position = 0;
+    }
+
+    /**
+     * Returns the index of the first '\n' in the given range of the buffer, or
+     * -1 if there is none. Each long is tested for a '\n' byte at once: a byte
+     * is zero after the xor if it was a '\n', and subtracting one from a zero
+     * byte sets its high bit. Borrows may flag bytes above the first match,
+     * which does not matter as the lowest flag wins in little endian order.
+     */
+    private int indexOfNewline(int from, int limit) {
+        int i = from;
+        for (; i + 8 <= limit; i += 8) {
+            long x = buffer.getLong(i) ^ NEWLINES;
+            long found = (x - ONES) & ~x & HIGHS;
+            if (found != 0)
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+        }
+        for (; i < limit; i++)
+            if (buffer.get(i) == '\n')
+                return i;
+        return -1;
+    }
+
+    private void setLine(Text text, int start, int end) {
+        if (end > start && buffer.get(end - 1) == '\r')
+            end--;
+        int length = end - start;
+        byte[] bytes = text.reserve(length);
+        buffer.position(start);
+        buffer.get(bytes, 0, length);
+    }
+
+    @Override
+    public Long getKey() {
+        return key;
+    }
+
+    /**
+     * Returns the current line. The same instance is returned for all lines.
+     */
+    @Override
+    public Text getValue() {
+        return line;
+    }
+
+    @Override
+    public boolean reusesObjects() {
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer = null;
+        channel.close();
+    }
+
+}
@@ -0,0 +1,41 @@
+package edu.illinois.cs.mapreduce.api.lib;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Properties;
+
+import edu.illinois.cs.mapreduce.api.InputFormat;
+import edu.illinois.cs.mapreduce.api.RecordReader;
+import edu.illinois.cs.mapreduce.api.Splitter;
+
+/**
+ * A line-based text input format that reads its splits with a
+ * {@link MappedLineRecordReader}. Files are split like by the
+ * {@link TextInputFormat}, and the same properties apply. Values are
+ * {@link Text} instances that are reused for all records of a split, and
+ * lines are only decoded if the mapper calls {@link Text#toString()}.
+ * 
+ * @author benjamin
+ */
+public class MappedTextInputFormat extends InputFormat<Long, Text, TextSplit> {
+
+    private final TextInputFormat format = new TextInputFormat();
+
+    @Override
+    public Splitter<TextSplit> createSplitter(InputStream is, Properties properties) {
+        return format.createSplitter(is, properties);
+    }
+
+    @Override
+    public RecordReader<Long, Text> createRecordReader(TextSplit split, InputStream is) {
+        if (!(is instanceof FileInputStream))
+            throw new IllegalArgumentException("mapped text input requires a file input stream");
+        FileInputStream fis = (FileInputStream)is;
+        if (split.isByteRange())
+            return new MappedLineRecordReader(fis.getChannel(), split.getStart(), true);
+        // line numbers start after the split's first line number, like in the
+        // LineRecordReader
+        return new MappedLineRecordReader(fis.getChannel(), split.getFirstLineNumber() + 1, false);
+    }
+
+}
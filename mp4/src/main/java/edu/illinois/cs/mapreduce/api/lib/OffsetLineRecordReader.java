@@ -0,0 +1,114 @@
+package edu.illinois.cs.mapreduce.api.lib;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import edu.illinois.cs.mapreduce.api.RecordReader;
+
+/**
+ * Reads byte offset + line records. Lines are terminated by '\n', and a
+ * preceding '\r' is dropped. Lines are decoded with the platform's default
+ * charset, like the {@link LineRecordReader}. The input is read in blocks
+ * that are scanned for line ends, and a line is decoded straight from its
+ * block unless it crosses the end of the block.
+ * 
+ * @author benjamin
+ */
+public class OffsetLineRecordReader extends RecordReader<Long, String> {
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private final InputStream is;
+    private final byte[] block = new byte[BLOCK_SIZE];
+    private int blockPosition;
+    private int blockLimit;
+    // collects lines that cross the end of a block
+    private byte[] buffer = new byte[256];
+    private long position;
+    private long offset;
+    private String line;
+
+    /**
+     * @param is stream starting at the beginning of a line
+     * @param start offset of the stream's first byte in the input file
+     */
+    public OffsetLineRecordReader(InputStream is, long start) {
+        this.is = is;
+        this.position = start;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        byte[] bytes = buffer;
+        int from = 0;
+        int length = 0;
+        boolean newline = false;
+        while (!newline) {
+            if (blockPosition == blockLimit && !fill())
+                break;
+            int start = blockPosition;
+            int end = start;
+            while (end < blockLimit && block[end] != '\n')
+                end++;
+            newline = end < blockLimit;
+            blockPosition = newline ? end + 1 : end;
+            if (newline && length == 0) {
+                bytes = block;
+                from = start;
+                length = end - start;
+            } else {
+                append(start, end - start, length);
+                bytes = buffer;
+                length += end - start;
+            }
+        }
+        if (!newline && length == 0) {
+            line = null;
+            return false;
+        }
+        offset = position;
+        position += length + (newline ? 1 : 0);
+        if (length > 0 && bytes[from + length - 1] == '\r')
+            length--;
+        line = new String(bytes, from, length);
+        return true;
+    }
+
+    /**
+     * Reads the next block, returns false at the end of the input.
+     */
+    private boolean fill() throws IOException {
+        int n = is.read(block);
+        blockPosition = 0;
+        blockLimit = Math.max(n, 0);
+        return n > 0;
+    }
+
+    /**
+     * Copies a range of the block to the given index of the line buffer.
+     */
+    private void append(int start, int length, int index) {
+        if (index + length > buffer.length) {
+            byte[] larger = new byte[Math.max(2 * buffer.length, index + length)];
+            System.arraycopy(buffer, 0, larger, 0, index);
+            buffer = larger;
+        }
+        System.arraycopy(block, start, buffer, index, length);
+    }
+
+    @Override
+    public Long getKey() {
+        return offset;
+    }
+
+    @Override
+    public String getValue() {
+        return line;
+    }
+
+    @Override
+    public void close() throws IOException {
+        is.close();
+    }
+
+}
@@ -0,0 +1,56 @@
+package edu.illinois.cs.mapreduce.api.lib;
+
+import edu.illinois.cs.mapreduce.api.NormalizedKeyComparator;
+
+/**
+ * Compares String keys written by {@link BinarySerialization} byte-wise on
+ * their UTF-8 encoding. This orders strings by code point, which differs from
+ * {@link String#compareTo(String)} only for supplementary characters.
+ * 
+ * @author benjamin
+ */
+public class StringComparator implements NormalizedKeyComparator<String> {
+
+    @Override
+    public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+        return BinaryComparator.compareLengthPrefixed(b1, s1, l1, b2, s2, l2);
+    }
+
+    @Override
+    public long getPrefix(byte[] b, int s, int l) {
+        return BinaryComparator.getLengthPrefixedPrefix(b, s, l);
+    }
+
+    @Override
+    public int compare(String s1, String s2) {
+        return compareStrings(s1, s2);
+    }
+
+    /**
+     * Compares two strings by code point, consistent with the byte-wise
+     * comparison of their UTF-8 encoding.
+     */
+    static int compareStrings(String s1, String s2) {
+        int n = Math.min(s1.length(), s2.length());
+        for (int i = 0; i < n; i++) {
+            char c1 = s1.charAt(i);
+            char c2 = s2.charAt(i);
+            if (c1 != c2)
+                return codePointOrder(c1) - codePointOrder(c2);
+        }
+        return s1.length() - s2.length();
+    }
+
+    /**
+     * Moves surrogates above the remaining BMP characters, so that UTF-16 code
+     * units compare in code point order.
+     */
+    private static int codePointOrder(char c) {
+        if (c >= 0xE000)
+            return c - 0x800;
+        if (c >= 0xD800)
+            return c + 0x2000;
+        return c;
+    }
+
+}
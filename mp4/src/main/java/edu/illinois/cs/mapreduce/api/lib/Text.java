@@ -0,0 +1,124 @@
+package edu.illinois.cs.mapreduce.api.lib;
+
+import java.nio.charset.Charset;
+
+/**
+ * A mutable UTF-8 string. The bytes are kept as they were read, and decoded
+ * only if {@link #toString()} is called, so that readers can reuse a single
+ * instance for all records and mappers that work on bytes never pay for
+ * decoding. Texts compare by their bytes as unsigned values, which is the
+ * order of the code points they encode. {@link BinarySerialization} writes
+ * them as length-prefixed bytes, which compare like strings.
+ * 
+ * @author benjamin
+ */
+public class Text implements Comparable<Text> {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final byte[] EMPTY = new byte[0];
+
+    private byte[] bytes = EMPTY;
+    private int length;
+    private String string;
+
+    public Text() {
+    }
+
+    public Text(String string) {
+        set(string);
+    }
+
+    public Text(Text text) {
+        set(text);
+    }
+
+    /**
+     * Returns the backing array. Only the first {@link #getLength()} bytes are
+     * valid, and the array may change with the next call to a setter.
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the number of valid bytes in the backing array.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Copies the given bytes, which must be UTF-8 encoded.
+     */
+    public void set(byte[] b, int off, int len) {
+        System.arraycopy(b, off, reserve(len), 0, len);
+    }
+
+    public void set(Text text) {
+        set(text.bytes, 0, text.length);
+    }
+
+    public void set(String string) {
+        byte[] b = string.getBytes(UTF8);
+        this.bytes = b;
+        this.length = b.length;
+        this.string = string;
+    }
+
+    /**
+     * Sets the length and returns a backing array with room for that many
+     * bytes, for the caller to fill in.
+     */
+    byte[] reserve(int len) {
+        if (bytes.length < len)
+            bytes = new byte[Math.max(len, 2 * bytes.length)];
+        length = len;
+        string = null;
+        return bytes;
+    }
+
+    @Override
+    public int compareTo(Text o) {
+        int n = Math.min(length, o.length);
+        for (int i = 0; i < n; i++) {
+            int c = (bytes[i] & 0xFF) - (o.bytes[i] & 0xFF);
+            if (c != 0)
+                return c;
+        }
+        return length - o.length;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof Text))
+            return false;
+        Text o = (Text)obj;
+        if (length != o.length)
+            return false;
+        for (int i = 0; i < length; i++)
+            if (bytes[i] != o.bytes[i])
+                return false;
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 1;
+        for (int i = 0; i < length; i++)
+            h = 31 * h + bytes[i];
+        return h;
+    }
+
+    /**
+     * Decodes the bytes. The result is cached until the text is changed.
+     */
+    @Override
+    public String toString() {
+        if (string == null)
+            string = new String(bytes, 0, length, UTF8);
+        return string;
+    }
+
+}
@@ -1,14 +1,19 @@
 package edu.illinois.cs.mapreduce.api.lib;
 
+import java.io.FileInputStream;
 import java.io.InputStream;
 import java.util.Properties;
 
 import edu.illinois.cs.mapreduce.api.InputFormat;
 import edu.illinois.cs.mapreduce.api.RecordReader;
+import edu.illinois.cs.mapreduce.api.Splitter;
 
 /**
  * Implementation of a line-based text input file. Text files are split by line
- * number.
+ * number, and records are keyed by line number. If the job sets
+ * 'text.input.format.bytes.per.split', files are split into byte ranges of
+ * that size instead, and records are keyed by the byte offset of the line,
+ * which avoids decoding the input during splitting.
  * 
  * @author benjamin
  */
@@ -16,15 +21,24 @@ public class TextInputFormat extends InputFormat<Long, String, TextSplit> {
 
     private static final String LPP = "text.input.format.lines.per.split";
     private static final String LPP_DEFAULT = "1000000";
+    private static final String BPP = "text.input.format.bytes.per.split";
 
     @Override
-    public TextSplitter createSplitter(InputStream is, Properties properties) {
+    public Splitter<TextSplit> createSplitter(InputStream is, Properties properties) {
+        String bytesPerSplit = properties.getProperty(BPP);
+        if (bytesPerSplit != null && bytesPerSplit.length() > 0) {
+            if (!(is instanceof FileInputStream))
+                throw new IllegalArgumentException("'" + BPP + "' requires a file input stream");
+            return new ByteRangeTextSplitter(((FileInputStream)is).getChannel(), Long.parseLong(bytesPerSplit));
+        }
         long linesPerSplit = Long.parseLong(properties.getProperty(LPP, LPP_DEFAULT));
         return new TextSplitter(is, linesPerSplit);
     }
 
     @Override
     public RecordReader<Long, String> createRecordReader(TextSplit split, InputStream is) {
+        if (split.isByteRange())
+            return new OffsetLineRecordReader(is, split.getStart());
         long firstLineNumber = ((TextSplit)split).getFirstLineNumber();
         return new LineRecordReader(is, firstLineNumber);
     }
@@ -4,7 +4,9 @@ import edu.illinois.cs.mapreduce.api.Split;
 
 /**
  * A descriptor of a text split. Stores the first line number in the split, so
- * that the LineRecordReader knows where it's starting.
+ * that the LineRecordReader knows where it's starting. Splits written by the
+ * {@link ByteRangeTextSplitter} store their byte range in the input file
+ * instead.
  * 
  * @author benjamin
  */
@@ -13,13 +15,42 @@ public class TextSplit implements Split {
     private static final long serialVersionUID = 4410819338009937385L;
 
     private final long firstLineNumber;
+    private final long start;
+    private final long length;
 
     public TextSplit(long firstLineNumber) {
         this.firstLineNumber = firstLineNumber;
+        this.start = -1;
+        this.length = -1;
+    }
+
+    public TextSplit(long start, long length) {
+        this.firstLineNumber = -1;
+        this.start = start;
+        this.length = length;
     }
 
     public long getFirstLineNumber() {
         return firstLineNumber;
     }
 
+    /**
+     * Returns true if the split was written as a byte range of the input.
+     */
+    public boolean isByteRange() {
+        return start >= 0;
+    }
+
+    /**
+     * Returns the offset of the split in the input file, or -1 if the split
+     * was written by line count.
+     */
+    public long getStart() {
+        return start;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
 }
@@ -0,0 +1,89 @@
+package edu.illinois.cs.mapreduce.api.lib;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Variable length encoding of integers: seven bits per byte, least
+ * significant group first, with the high bit set on all but the last byte.
+ * Small non-negative values take a single byte, negative values five.
+ * 
+ * @author benjamin
+ */
+public final class VarInt {
+
+    private VarInt() {
+        super();
+    }
+
+    public static void writeVInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    public static int readVInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+        throw new IOException("malformed variable length integer");
+    }
+
+    /**
+     * Encodes a variable length integer into the given array.
+     * 
+     * @param b array to write to
+     * @param off offset of the first byte
+     * @param value value to encode
+     * @return offset after the last byte written
+     */
+    public static int writeVInt(byte[] b, int off, int value) {
+        while ((value & ~0x7F) != 0) {
+            b[off++] = (byte)((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        b[off++] = (byte)value;
+        return off;
+    }
+
+    /**
+     * Decodes a variable length integer from the given array.
+     * 
+     * @param b array holding the encoded integer
+     * @param off offset of the first byte
+     * @return decoded value
+     */
+    public static int readVInt(byte[] b, int off) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte next = b[off++];
+            value |= (next & 0x7F) << shift;
+            if (next >= 0)
+                return value;
+        }
+        throw new IllegalArgumentException("malformed variable length integer");
+    }
+
+    /**
+     * Returns the number of bytes needed to encode the given value.
+     * 
+     * @param value
+     * @return encoded size in bytes
+     */
+    public static int getVIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+}
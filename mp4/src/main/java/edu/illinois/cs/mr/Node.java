@@ -19,6 +19,7 @@ import edu.illinois.cs.mr.NodeConfiguration.Endpoint;
 import edu.illinois.cs.mr.fs.FileSystem;
 import edu.illinois.cs.mr.fs.FileSystemService;
 import edu.illinois.cs.mr.fs.Path;
+import edu.illinois.cs.mr.fs.QualifiedPath;
 import edu.illinois.cs.mr.jm.AttemptID;
 import edu.illinois.cs.mr.jm.AttemptStatus;
 import edu.illinois.cs.mr.jm.JobID;
@@ -31,6 +32,7 @@ import edu.illinois.cs.mr.lb.NodeStatusSnapshot;
 import edu.illinois.cs.mr.te.TaskExecutor;
 import edu.illinois.cs.mr.te.TaskExecutorService;
 import edu.illinois.cs.mr.te.TaskExecutorTask;
+import edu.illinois.cs.mr.util.AbortableOutputStream;
 import edu.illinois.cs.mr.util.RPC;
 import edu.illinois.cs.mr.util.RPC.RPCServer;
 
@@ -262,6 +264,11 @@ public class Node implements NodeService {
         return jobManager.writeOutput(jobID, file);
     }
 
+    @Override
+    public QualifiedPath[] getMapOutputs(JobID jobID, int partition) throws IOException {
+        return jobManager.getMapOutputs(jobID, partition);
+    }
+
     @Override
     public InputStream read(Path path) throws IOException {
         return fileSystem.read(path);
@@ -272,6 +279,11 @@ public class Node implements NodeService {
         fileSystem.write(dest, is);
     }
 
+    @Override
+    public AbortableOutputStream write(Path dest) throws IOException {
+        return fileSystem.write(dest);
+    }
+
     @Override
     public boolean delete(Path path) throws IOException {
         return fileSystem.delete(path);
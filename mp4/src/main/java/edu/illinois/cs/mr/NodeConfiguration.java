@@ -79,6 +79,10 @@ public class NodeConfiguration {
         int teNumThreads = toPositiveInt(props.getProperty("te.num.threads", "1"));
         double teThrottle = Double.parseDouble(props.getProperty("te.throttle", "0.0"));
         int teStatusUpdateInterval = toPositiveInt(props.getProperty("te.status.update.interval", "5000"));
+        // by default, sort on the processors that are not running tasks
+        int teSortThreads = Math.max(0, Runtime.getRuntime().availableProcessors() - teNumThreads);
+        if (props.getProperty("te.sort.threads") != null)
+            teSortThreads = toPositiveInt(props.getProperty("te.sort.threads"));
 
         String lbBootstrapPolicyClass =
             props.getProperty("lb.boostrap.policy", RoundRobinNodeSelectionPolicy.class.getName());
@@ -91,7 +95,8 @@ public class NodeConfiguration {
 
         return new NodeConfiguration(nodeId, port, nodeMap, lbBootstrapPolicyClass, lbTransferPolicyClass,
                                      lbLocationPolicyClass, lbSelectionPolicyClass, lbStatusUpdateInterval,
-                                     teNumThreads, teThrottle, teStatusUpdateInterval, fsRootDir, props);
+                                     teNumThreads, teThrottle, teStatusUpdateInterval, teSortThreads, fsRootDir,
+                                     props);
     }
 
     private static int toPort(String value) {
@@ -151,6 +156,7 @@ public class NodeConfiguration {
     public final int teNumThreads;
     public final double teThrottle;
     public final int teStatusUpdateInterval;
+    public final int teSortThreads;
 
     // file system configuration
     public final File fsRootDir;
@@ -169,6 +175,7 @@ public class NodeConfiguration {
                              int teNumThreads,
                              double teThrottle,
                              int teStatusUpdateInterval,
+                             int teSortThreads,
                              File fsRootDir,
                              Properties properties) {
         this.nodeId = nodeId;
@@ -182,6 +189,7 @@ public class NodeConfiguration {
         this.teNumThreads = teNumThreads;
         this.teThrottle = teThrottle;
         this.teStatusUpdateInterval = teStatusUpdateInterval;
+        this.teSortThreads = teSortThreads;
         this.fsRootDir = fsRootDir;
         this.properties = properties;
     }
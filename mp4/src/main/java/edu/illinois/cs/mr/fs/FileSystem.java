@@ -11,6 +11,7 @@ import java.net.URL;
 import edu.illinois.cs.mr.Node;
 import edu.illinois.cs.mr.NodeConfiguration;
 import edu.illinois.cs.mr.NodeListener;
+import edu.illinois.cs.mr.util.AbortableOutputStream;
 import edu.illinois.cs.mr.util.FileUtil;
 
 /**
@@ -75,6 +76,18 @@ public class FileSystem implements FileSystemService, NodeListener {
         return file.exists();
     }
 
+    /**
+     * Returns an unbuffered stream to read the file at the given path, whose
+     * channel can be used to map the file into memory
+     * 
+     * @param path must be closed by client when finished
+     * @return
+     * @throws IOException
+     */
+    public FileInputStream open(Path path) throws IOException {
+        return new FileInputStream(resolve(path));
+    }
+
     /**
      * Returns a URL for the given path
      * 
@@ -87,15 +100,49 @@ public class FileSystem implements FileSystemService, NodeListener {
     }
 
     /**
-     * Returns an output stream to write to the file at the given path
-     * 
-     * @param dest must be closed by client when finished
-     * @return
-     * @throws IOException
+     * @see edu.illinois.cs.mr.fs.FileSystemService#write(edu.illinois.cs.mr.fs.Path)
      */
-    public OutputStream write(Path dest) throws IOException {
-        File file = resolve(dest);
-        return FileUtil.write(file);
+    @Override
+    public AbortableOutputStream write(Path dest) throws IOException {
+        final File file = resolve(dest);
+        final OutputStream os = FileUtil.write(file);
+        return new AbortableOutputStream() {
+            private boolean closed;
+
+            @Override
+            public void write(int b) throws IOException {
+                os.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                os.write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                os.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                os.close();
+                closed = true;
+            }
+
+            @Override
+            public void abort() throws IOException {
+                if (closed)
+                    return;
+                closed = true;
+                try {
+                    os.close();
+                } finally {
+                    if (file.exists() && !file.delete())
+                        throw new IOException("Could not delete " + file);
+                }
+            }
+        };
     }
 
     /**
@@ -3,6 +3,8 @@ package edu.illinois.cs.mr.fs;
 import java.io.IOException;
 import java.io.InputStream;
 
+import edu.illinois.cs.mr.util.AbortableOutputStream;
+
 /**
  * Interface to either a local or remote file system. This interface provides an
  * input/output stream abstraction to file system users regardless of underlying
@@ -40,6 +42,23 @@ public interface FileSystemService {
      */
     void write(Path path, InputStream is) throws IOException;
 
+    /**
+     * Returns an OutputStream to write data to a file at the given path, with
+     * the same semantics as {@link #write(Path, InputStream)}. The data is
+     * pushed straight to the file, or over the connection of a remote
+     * invocation, so the caller needs no thread to produce an InputStream. The
+     * client of the method must close the OutputStream when done writing to
+     * it; a remote write only completes when close returns. A client that
+     * fails to produce all data must abort the stream instead, which deletes
+     * the file.
+     * 
+     * @param path Path to the file to be written
+     * @return OutputStream OutputStream connected to the file
+     * @throws IOException If the file cannot be created or an error occurs
+     *             performing the remote invocation
+     */
+    AbortableOutputStream write(Path path) throws IOException;
+
     /**
      * Deletes the file or directory at the given path.
      * 
@@ -1,5 +1,7 @@
 package edu.illinois.cs.mr.fs;
 
+import java.io.Serializable;
+
 import edu.illinois.cs.mr.NodeID;
 
 /**
@@ -7,7 +9,9 @@ import edu.illinois.cs.mr.NodeID;
  * 
  * @author benjamin
  */
-public class QualifiedPath {
+public class QualifiedPath implements Serializable {
+
+    private static final long serialVersionUID = -3371949205416806457L;
 
     private final NodeID nodeId;
     private final Path path;
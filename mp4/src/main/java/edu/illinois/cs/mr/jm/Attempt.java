@@ -46,6 +46,17 @@ public class Attempt extends Status<AttemptID, AttemptStatus> implements Seriali
         return outputPath;
     }
 
+    /**
+     * Returns the path of the given output partition. Map attempts write one
+     * output file per reduce task.
+     * 
+     * @param partition
+     * @return
+     */
+    public Path getOutputPath(int partition) {
+        return outputPath.beforeLast().append(outputPath.last() + "-" + partition);
+    }
+
     public String getMessage() {
         return message;
     }
@@ -24,6 +24,8 @@ public class Job extends PhasedStatus<JobID, JobStatus, Phase> {
     private final JobDescriptor descriptor;
     private final Map<TaskID, MapTask> mapTasks;
     private final Map<TaskID, ReduceTask> reduceTasks;
+    private boolean mapTasksRegistered;
+    private boolean reduceTasksScheduled;
 
     public Job(JobID id, String jarName, JobDescriptor descriptor) {
         super(id, Phase.class);
@@ -79,6 +81,35 @@ public class Job extends PhasedStatus<JobID, JobStatus, Phase> {
         return reduceTasks.values();
     }
 
+    /**
+     * Marks that all map tasks of the job have been registered.
+     */
+    public synchronized void setMapTasksRegistered() {
+        this.mapTasksRegistered = true;
+    }
+
+    /**
+     * Returns true exactly once: as soon as all map tasks are registered and
+     * at least the given fraction of them has succeeded. The caller is then
+     * responsible for scheduling the reduce tasks.
+     * 
+     * @param slowstart fraction of map tasks that must have succeeded
+     * @return
+     */
+    public synchronized boolean shouldScheduleReduceTasks(double slowstart) {
+        if (reduceTasksScheduled || !mapTasksRegistered || getState() == State.FAILED
+            || getState() == State.CANCELED)
+            return false;
+        int succeeded = 0;
+        for (MapTask task : mapTasks.values())
+            if (task.getState() == State.SUCCEEDED)
+                succeeded++;
+        if (succeeded < slowstart * mapTasks.size())
+            return false;
+        reduceTasksScheduled = true;
+        return true;
+    }
+
     @Override
     public synchronized JobStatus toImmutableStatus() {
         return new JobStatus(this);
@@ -10,10 +10,21 @@ import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 import java.util.zip.ZipEntry;
 
+import edu.illinois.cs.mapreduce.api.lib.BinarySerialization;
+import edu.illinois.cs.mapreduce.api.lib.HashPartitioner;
+
 public class JobDescriptor implements Serializable {
 
     private static final long serialVersionUID = 2403104226863768716L;
 
+    // number of reduce tasks, and of partitions of the map output
+    private static final String RNT = "reduce.num.tasks";
+    private static final String RNT_DEFAULT = "1";
+    // jobs that do not need sorted reducer input can group intermediate data in
+    // hash tables instead of sorting it; their output order is undefined
+    private static final String JU = "job.unordered";
+    private static final String JU_DEFAULT = "false";
+
     public static JobDescriptor read(File jobFile, Properties nodeProps) throws IOException {
         JarFile jar = new JarFile(jobFile);
         try {
@@ -25,6 +36,13 @@ public class JobDescriptor implements Serializable {
             String reducerClass = getRequiredAttribute(attrs, "ReducerClass");
             String inputFormatClass = getRequiredAttribute(attrs, "InputFormatClass");
             String outputFormatClass = getRequiredAttribute(attrs, "OutputFormatClass");
+            String serializationClass = attrs.getValue("SerializationClass");
+            if (serializationClass == null)
+                serializationClass = BinarySerialization.class.getName();
+            String partitionerClass = attrs.getValue("PartitionerClass");
+            if (partitionerClass == null)
+                partitionerClass = HashPartitioner.class.getName();
+            String comparatorClass = attrs.getValue("ComparatorClass");
 
             // load job properties
             Properties properties = new Properties(nodeProps);
@@ -37,8 +55,13 @@ public class JobDescriptor implements Serializable {
                     is.close();
                 }
             }
+            int numReduceTasks = Integer.parseInt(properties.getProperty(RNT, RNT_DEFAULT));
+            if (numReduceTasks < 1)
+                throw new IllegalArgumentException("invalid " + RNT + ": " + numReduceTasks);
+            boolean unordered = Boolean.parseBoolean(properties.getProperty(JU, JU_DEFAULT));
             return new JobDescriptor(mapperClass, combinerClass, reducerClass, inputFormatClass, outputFormatClass,
-                                     properties);
+                                     serializationClass, partitionerClass, comparatorClass, numReduceTasks,
+                                     unordered, properties);
         } finally {
             jar.close();
         }
@@ -56,6 +79,11 @@ public class JobDescriptor implements Serializable {
     private final String reducerClass;
     private final String inputFormatClass;
     private final String outputFormatClass;
+    private final String serializationClass;
+    private final String partitionerClass;
+    private final String comparatorClass;
+    private final int numReduceTasks;
+    private final boolean unordered;
     private final Properties properties;
 
     public JobDescriptor(String mapperClass,
@@ -63,12 +91,22 @@ public class JobDescriptor implements Serializable {
                          String reducerClass,
                          String inputFormatClass,
                          String outputFormatClass,
+                         String serializationClass,
+                         String partitionerClass,
+                         String comparatorClass,
+                         int numReduceTasks,
+                         boolean unordered,
                          Properties properties) {
         this.mapperClass = mapperClass;
         this.combinerClass = combinerClass;
         this.reducerClass = reducerClass;
         this.inputFormatClass = inputFormatClass;
         this.outputFormatClass = outputFormatClass;
+        this.serializationClass = serializationClass;
+        this.partitionerClass = partitionerClass;
+        this.comparatorClass = comparatorClass;
+        this.numReduceTasks = numReduceTasks;
+        this.unordered = unordered;
         this.properties = properties;
     }
 
@@ -92,6 +130,31 @@ public class JobDescriptor implements Serializable {
         return outputFormatClass;
     }
 
+    public String getSerializationClass() {
+        return serializationClass;
+    }
+
+    public String getPartitionerClass() {
+        return partitionerClass;
+    }
+
+    public String getComparatorClass() {
+        return comparatorClass;
+    }
+
+    public int getNumReduceTasks() {
+        return numReduceTasks;
+    }
+
+    /**
+     * Returns true if the job does not need sorted reducer input. Intermediate
+     * data of such jobs is grouped in hash tables instead of being sorted, and
+     * the order of the job output is undefined.
+     */
+    public boolean isUnordered() {
+        return unordered;
+    }
+
     public Properties getProperties() {
         return properties;
     }
@@ -107,6 +170,16 @@ public class JobDescriptor implements Serializable {
             + inputFormatClass
             + ", outputFormatClass="
             + outputFormatClass
+            + ", serializationClass="
+            + serializationClass
+            + ", partitionerClass="
+            + partitionerClass
+            + ", comparatorClass="
+            + comparatorClass
+            + ", numReduceTasks="
+            + numReduceTasks
+            + ", unordered="
+            + unordered
             + ", properties="
             + properties
             + "]";
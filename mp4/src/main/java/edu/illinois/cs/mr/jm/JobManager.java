@@ -1,26 +1,31 @@
 package edu.illinois.cs.mr.jm;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import edu.illinois.cs.mapreduce.api.ConcurrentSplitter;
 import edu.illinois.cs.mapreduce.api.InputFormat;
 import edu.illinois.cs.mapreduce.api.Split;
 import edu.illinois.cs.mapreduce.api.Splitter;
@@ -34,6 +39,8 @@ import edu.illinois.cs.mr.fs.QualifiedPath;
 import edu.illinois.cs.mr.te.TaskExecutorMapTask;
 import edu.illinois.cs.mr.te.TaskExecutorReduceTask;
 import edu.illinois.cs.mr.te.TaskExecutorService;
+import edu.illinois.cs.mr.util.AbortableOutputStream;
+import edu.illinois.cs.mr.util.FileUtil;
 import edu.illinois.cs.mr.util.ReflectionUtil;
 import edu.illinois.cs.mr.util.Status.State;
 
@@ -44,6 +51,17 @@ import edu.illinois.cs.mr.util.Status.State;
  */
 public class JobManager implements JobManagerService, NodeListener {
 
+    // fraction of succeeded map tasks at which reduce tasks are scheduled; lower
+    // values let reduce tasks fetch map outputs while the map phase is still
+    // running, and a waiting reduce task does not hold up the map tasks of its
+    // node
+    private static final String RSS = "reduce.slowstart.completed.maps";
+    private static final String RSS_DEFAULT = "1.0";
+    // number of threads that upload the splits of a ConcurrentSplitter to their
+    // nodes
+    private static final String SUT = "split.upload.threads";
+    private static final String SUT_DEFAULT = "4";
+
     private final NodeConfiguration config;
     private final AtomicInteger counter;
     private final Map<JobID, Job> jobs;
@@ -100,7 +118,25 @@ public class JobManager implements JobManagerService, NodeListener {
         Job job = getJob(jobID);
         if (job == null || job.getState() != State.SUCCEEDED)
             return false;
-        node.getFileSystem().copy(file, job.getDir().append("output"));
+        List<Attempt> attempts = new ArrayList<Attempt>();
+        synchronized (job) {
+            for (ReduceTask task : job.getReduceTasks())
+                attempts.add(task.getSuccessfulAttempt());
+        }
+        OutputStream os = FileUtil.write(file);
+        try {
+            for (Attempt attempt : attempts) {
+                FileSystemService fs = node.getFileSystemService(attempt.getTargetNodeID());
+                InputStream is = fs.read(attempt.getOutputPath());
+                try {
+                    FileUtil.transfer(is, os);
+                } finally {
+                    is.close();
+                }
+            }
+        } finally {
+            os.close();
+        }
         return true;
     }
 
@@ -168,91 +204,198 @@ public class JobManager implements JobManagerService, NodeListener {
     private void submitMapTasks(Job job, File jarFile, File inputFile) throws IOException, InterruptedException {
         JobDescriptor descriptor = job.getDescriptor();
         InputFormat<?, ?, ?> inputFormat = ReflectionUtil.newInstance(descriptor.getInputFormatClass(), jarFile);
-        InputStream is = new BufferedInputStream(new FileInputStream(inputFile));
+        // unbuffered, so that splitters can use the file channel
+        InputStream is = new FileInputStream(inputFile);
         try {
             final Splitter<?> splitter = inputFormat.createSplitter(is, descriptor.getProperties());
-            Set<NodeID> nodesWithJar = new HashSet<NodeID>();
-            int num = 0;
-            while (!splitter.isEOF()) {
-                // 1. ask load balancer which node to place task on
-                NodeID targetNodeId = node.getLoadBalancer().selectNode();
+            if (splitter instanceof ConcurrentSplitter)
+                submitMapTasks(job, jarFile, (ConcurrentSplitter<?>)splitter);
+            else
+                submitMapTasks(job, jarFile, splitter);
+        } finally {
+            is.close();
+        }
+        // 8. without map tasks, the map phase is done, but no node has the jar
+        // for the reduce tasks yet
+        boolean noMapTasks;
+        synchronized (job) {
+            noMapTasks = !job.getMapTasks().iterator().hasNext();
+        }
+        if (noMapTasks) {
+            writeJar(job, jarFile, node.getFileSystemService(config.nodeId));
+            job.setState(State.SUCCEEDED);
+        }
+        // 9. the maps may already have reached the slowstart threshold
+        job.setMapTasksRegistered();
+        scheduleReduceTasks(job);
+    }
+
+    /**
+     * Writes one split after the other and submits its attempt.
+     */
+    private void submitMapTasks(Job job, File jarFile, Splitter<?> splitter) throws IOException,
+        InterruptedException {
+        Set<NodeID> nodesWithJar = new HashSet<NodeID>();
+        int num = 0;
+        while (!splitter.isEOF()) {
+            // 1. ask load balancer which node to place task on
+            NodeID targetNodeId = node.getLoadBalancer().selectNode();
+
+            // 2. create and regsiter task
+            TaskID taskId = new TaskID(job.getId(), num, true);
+            Path inputPath = job.getDir().append(taskId + "-input");
+            MapTask task = new MapTask(taskId, inputPath);
+            job.addTask(task);
+
+            // 3. write split to node's file system
+            final FileSystemService fs = node.getFileSystemService(targetNodeId);
+            Split split = writeSplit(splitter, inputPath, fs);
+            task.setSplit(split);
+
+            // 4. write job file if not already written
+            if (nodesWithJar.add(targetNodeId))
+                writeJar(job, jarFile, fs);
+
+            // 6. create and register task attempt
+            AttemptID attemptID = task.nextAttemptID();
+            Path outputPath = job.getDir().append(attemptID.toQualifiedString(1) + "-output");
+            Attempt attempt = new Attempt(attemptID, targetNodeId, outputPath);
+            task.addAttempt(attempt);
+
+            // 7. submit task
+            submitMapTaskAttempt(job, task, attempt);
+            num++;
+        }
+    }
 
-                // 2. create and regsiter task
+    /**
+     * Determines the splits on the calling thread, and uploads them to their
+     * target nodes on a bounded pool of threads. Each attempt is submitted as
+     * soon as its split has been written. The splitter waits while all
+     * upload threads are busy.
+     */
+    private <S extends Split> void submitMapTasks(final Job job, File jarFile, final ConcurrentSplitter<S> splitter)
+        throws IOException, InterruptedException {
+        int numThreads = Integer.parseInt(job.getDescriptor().getProperties().getProperty(SUT, SUT_DEFAULT));
+        ExecutorService uploaders = Executors.newFixedThreadPool(numThreads);
+        final Semaphore slots = new Semaphore(numThreads);
+        List<Future<?>> uploads = new ArrayList<Future<?>>();
+        Set<NodeID> nodesWithJar = new HashSet<NodeID>();
+        try {
+            for (int num = 0; !splitter.isEOF(); num++) {
+                NodeID targetNodeId = node.getLoadBalancer().selectNode();
                 TaskID taskId = new TaskID(job.getId(), num, true);
-                Path inputPath = job.getDir().append(taskId + "-input");
-                MapTask task = new MapTask(taskId, inputPath);
+                final Path inputPath = job.getDir().append(taskId + "-input");
+                final MapTask task = new MapTask(taskId, inputPath);
                 job.addTask(task);
-
-                // 3. write split to node's file system
-                final FileSystemService fs = node.getFileSystemService(targetNodeId);
-                Split split = writeSplit(splitter, inputPath, fs);
+                final S split = splitter.nextSplit();
                 task.setSplit(split);
-
-                // 4. write job file if not already written
-                if (!nodesWithJar.contains(targetNodeId)) {
-                    InputStream fis = new BufferedInputStream(new FileInputStream(jarFile));
-                    try {
-                        fs.write(job.getJarPath(), fis);
-                    } finally {
-                        fis.close();
-                    }
-                    nodesWithJar.add(targetNodeId);
-                }
-
-                // 6. create and register task attempt
+                final FileSystemService fs = node.getFileSystemService(targetNodeId);
+                if (nodesWithJar.add(targetNodeId))
+                    writeJar(job, jarFile, fs);
                 AttemptID attemptID = task.nextAttemptID();
                 Path outputPath = job.getDir().append(attemptID.toQualifiedString(1) + "-output");
-                Attempt attempt = new Attempt(attemptID, targetNodeId, outputPath);
+                final Attempt attempt = new Attempt(attemptID, targetNodeId, outputPath);
                 task.addAttempt(attempt);
-
-                // 7. submit task
-                submitMapTaskAttempt(job, task, attempt);
-                num++;
+                slots.acquire();
+                uploads.add(uploaders.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        try {
+                            writeSplit(new SplitWriter() {
+                                @Override
+                                public Split write(OutputStream os) throws IOException {
+                                    splitter.writeSplit(split, os);
+                                    return split;
+                                }
+                            }, inputPath, fs);
+                            submitMapTaskAttempt(job, task, attempt);
+                            return null;
+                        } finally {
+                            slots.release();
+                        }
+                    }
+                }));
+                // fail fast if an upload has failed
+                for (Iterator<Future<?>> it = uploads.iterator(); it.hasNext();) {
+                    Future<?> upload = it.next();
+                    if (upload.isDone()) {
+                        get(upload);
+                        it.remove();
+                    }
+                }
             }
+            for (Future<?> upload : uploads)
+                get(upload);
         } finally {
-            is.close();
+            uploaders.shutdownNow();
+        }
+    }
+
+    private void writeJar(Job job, File jarFile, FileSystemService fs) throws IOException {
+        InputStream fis = new BufferedInputStream(new FileInputStream(jarFile));
+        try {
+            fs.write(job.getJarPath(), fis);
+        } finally {
+            fis.close();
         }
     }
 
     /**
-     * the only purpose of this complex chunk of code is to turn the
-     * OutputStream the splitter needs into an InputStream for the file system
-     * 
-     * @throws InterruptedException
+     * Writes the data of a split to an OutputStream.
      */
-    private Split writeSplit(final Splitter<?> splitter, Path inputPath, final FileSystemService fs)
-        throws IOException, InterruptedException {
-        Split split;
-        final PipedOutputStream pos = new PipedOutputStream();
+    private interface SplitWriter {
+        Split write(OutputStream os) throws IOException;
+    }
+
+    private Split writeSplit(final Splitter<?> splitter, Path inputPath, FileSystemService fs) throws IOException {
+        return writeSplit(new SplitWriter() {
+            @Override
+            public Split write(OutputStream os) throws IOException {
+                return splitter.writeSplit(os);
+            }
+        }, inputPath, fs);
+    }
+
+    /**
+     * Streams a split directly into the file system of its target node. If
+     * the split cannot be written completely, the write is aborted, so that
+     * no truncated split is left behind.
+     */
+    private Split writeSplit(SplitWriter splitWriter, Path inputPath, FileSystemService fs) throws IOException {
+        AbortableOutputStream target = fs.write(inputPath);
+        boolean written = false;
         try {
-            final PipedInputStream pis = new PipedInputStream(pos, 8192);
-            Future<Split> future = node.getExecutorService().submit(new Callable<Split>() {
-                @Override
-                public Split call() throws IOException {
-                    try {
-                        return splitter.writeSplit(pos);
-                    } finally {
-                        pos.close();
-                    }
+            OutputStream os = new BufferedOutputStream(target);
+            Split split = splitWriter.write(os);
+            os.close();
+            written = true;
+            return split;
+        } finally {
+            // do not mask the failure of the split writer
+            if (!written) {
+                try {
+                    target.abort();
+                } catch (IOException e) {
+                    e.printStackTrace();
                 }
-            });
-            fs.write(inputPath, pis);
-            try {
-                split = future.get();
-            } catch (ExecutionException e) {
-                Throwable t = e.getCause();
-                if (t instanceof IOException)
-                    throw (IOException)t;
-                if (t instanceof Error)
-                    throw (Error)t;
-                if (t instanceof RuntimeException)
-                    throw (RuntimeException)t;
-                throw new RuntimeException(e);
             }
-        } finally {
-            pos.close();
         }
-        return split;
+    }
+
+    private static <T> T get(Future<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable t = e.getCause();
+            if (t instanceof IOException)
+                throw (IOException)t;
+            if (t instanceof Error)
+                throw (Error)t;
+            if (t instanceof RuntimeException)
+                throw (RuntimeException)t;
+            throw new RuntimeException(e);
+        }
     }
 
     private void submitMapTaskAttempt(Job job, MapTask task, Attempt attempt) throws IOException {
@@ -262,47 +405,123 @@ public class JobManager implements JobManagerService, NodeListener {
     }
 
     /**
-     * Currently we schedule one reduce task once all map tasks have completed.
-     * The framework could be extended to support multiple reducers. In that
-     * case each job would output multiple output files that the user would have
-     * to aggregate. The map output files are not copied here, but by the reduce
-     * task itself when run.
+     * Submits the job's reduce tasks on a separate thread if all map tasks have
+     * been registered and enough of them have succeeded, see
+     * {@link Job#shouldScheduleReduceTasks(double)}.
+     * 
+     * @param job
+     */
+    private void scheduleReduceTasks(final Job job) {
+        double slowstart = Double.parseDouble(job.getDescriptor().getProperties().getProperty(RSS, RSS_DEFAULT));
+        if (!job.shouldScheduleReduceTasks(slowstart))
+            return;
+        node.getExecutorService().submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    submitReduceTasks(job);
+                } catch (Throwable t) {
+                    job.setState(State.FAILED);
+                    t.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * Creates and submits the job's reduce tasks. Each reduce task processes
+     * one partition of the map output and is placed on a node chosen by the
+     * load balancer. All tasks are registered with the job before any of them
+     * is submitted, so that the job cannot complete before the last task has
+     * been added. The map outputs are not copied here, reduce tasks locate them
+     * through {@link #getMapOutputs(JobID, int)} and fetch them as the map
+     * tasks succeed.
      * 
      * @param job
      * @throws IOException
+     * @throws InterruptedException
      */
-    private void submitReduceTasks(Job job) throws IOException {
-        // 1. create reduce task
-        TaskID taskID = new TaskID(job.getId(), 1, false);
-        // collect all map output paths
-        List<QualifiedPath> inputPaths = new ArrayList<QualifiedPath>();
+    private void submitReduceTasks(Job job) throws IOException, InterruptedException {
+        int numReduceTasks = job.getDescriptor().getNumReduceTasks();
+        // 1. find a node that has the job jar, which is this node if the job
+        // has no map tasks
+        NodeID jarNodeId = config.nodeId;
         synchronized (job) {
-            for (MapTask mapTask : job.getMapTasks()) {
-                Attempt attempt = mapTask.getSuccessfulAttempt();
-                if (attempt == null)
-                    throw new IllegalStateException("Map task " + mapTask.getId()
-                        + " does not have a succeeded attempt");
-                QualifiedPath qPath = new QualifiedPath(attempt.getTargetNodeID(), attempt.getOutputPath());
-                inputPaths.add(qPath);
+            Iterator<MapTask> mapTasks = job.getMapTasks().iterator();
+            if (mapTasks.hasNext()) {
+                MapTask mapTask = mapTasks.next();
+                synchronized (mapTask) {
+                    jarNodeId = mapTask.getAttempts().iterator().next().getTargetNodeID();
+                }
             }
         }
-        ReduceTask task = new ReduceTask(taskID, inputPaths);
 
-        // 2. create attempt
-        AttemptID attemptId = new AttemptID(taskID, 1);
-        Path outputPath = job.getDir().append("output");
-        Attempt attempt = new Attempt(attemptId, config.nodeId, outputPath);
-        task.addAttempt(attempt);
+        // 2. create and register one task and attempt per partition
+        List<Attempt> attempts = new ArrayList<Attempt>(numReduceTasks);
+        List<ReduceTask> tasks = new ArrayList<ReduceTask>(numReduceTasks);
+        for (int partition = 0; partition < numReduceTasks; partition++) {
+            ReduceTask task = new ReduceTask(new TaskID(job.getId(), partition, false));
+            NodeID targetNodeId = node.getLoadBalancer().selectNode();
+            Path outputPath = job.getDir().append("output-" + partition);
+            Attempt attempt = new Attempt(task.nextAttemptID(), targetNodeId, outputPath);
+            task.addAttempt(attempt);
+            job.addTask(task);
+            tasks.add(task);
+            attempts.add(attempt);
+        }
+
+        // 3. submit tasks
+        for (int i = 0; i < tasks.size(); i++) {
+            Attempt attempt = attempts.get(i);
+            ensureJarExists(job, jarNodeId, attempt.getTargetNodeID());
+            submitReduceTaskAttemp(job, tasks.get(i), attempt);
+        }
+    }
+
+    /**
+     * @see edu.illinois.cs.mr.jm.JobManagerService#getMapOutputs(JobID, int)
+     */
+    @Override
+    public QualifiedPath[] getMapOutputs(JobID jobID, int partition) throws IOException {
+        Job job = getJob(jobID);
+        if (job == null)
+            return null;
+        synchronized (job) {
+            if (job.getState() == State.FAILED || job.getState() == State.CANCELED)
+                return null;
+            List<QualifiedPath> outputs = new ArrayList<QualifiedPath>();
+            for (MapTask task : job.getMapTasks()) {
+                Attempt attempt = task.getSuccessfulAttempt();
+                if (attempt == null)
+                    outputs.add(null);
+                else
+                    outputs.add(new QualifiedPath(attempt.getTargetNodeID(), attempt.getOutputPath(partition)));
+            }
+            return outputs.toArray(new QualifiedPath[outputs.size()]);
+        }
+    }
 
-        // 3. register and submit task
-        job.addTask(task);
-        submitReduceTaskAttemp(job, task, attempt);
+    /**
+     * Copies the job jar from the source to the target node if the target node
+     * does not have it yet.
+     */
+    private void ensureJarExists(Job job, NodeID source, NodeID target) throws IOException {
+        FileSystemService targetFs = node.getFileSystemService(target);
+        Path jarPath = job.getJarPath();
+        if (targetFs.exists(jarPath))
+            return;
+        InputStream is = node.getFileSystemService(source).read(jarPath);
+        try {
+            targetFs.write(jarPath, is);
+        } finally {
+            is.close();
+        }
     }
 
     private void submitReduceTaskAttemp(Job job, ReduceTask task, Attempt attempt) throws IOException {
         TaskExecutorService taskExecutor = node.getTaskExecutorService(attempt.getTargetNodeID());
         taskExecutor.execute(new TaskExecutorReduceTask(attempt.getId(), job.getJarPath(), job.getDescriptor(), attempt
-            .getOutputPath(), attempt.getTargetNodeID(), task.getInputPaths()));
+            .getOutputPath(), attempt.getTargetNodeID(), task.getId().getValue()));
     }
 
     /**
@@ -332,9 +551,8 @@ public class JobManager implements JobManagerService, NodeListener {
     }
 
     /**
-     * Updates the status of the job for the given ID and schedules a task to
-     * start the job's reduce phase if the job was transitioned into the reduce
-     * phase.
+     * Updates the status of the job for the given ID and schedules the job's
+     * reduce tasks once enough map tasks have succeeded.
      * 
      * @param jobId
      * @param statuses
@@ -345,25 +563,13 @@ public class JobManager implements JobManagerService, NodeListener {
      */
     private boolean updateJobStatus(JobID jobId, AttemptStatus[] statuses, int offset, int length) throws IOException {
         boolean stateChanged;
-        final Job job;
+        Job job;
         synchronized (jobs) {
             job = jobs.get(jobId);
         }
         synchronized (job) {
-            Phase phase = job.getPhase();
             stateChanged = job.updateStatus(statuses, offset, length);
-            if (stateChanged && phase != job.getPhase()) {
-                node.getExecutorService().submit(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            submitReduceTasks(job);
-                        } catch (IOException e) {
-                            job.setState(State.FAILED);
-                        }
-                    }
-                });
-            }
+            scheduleReduceTasks(job);
         }
         return stateChanged;
     }
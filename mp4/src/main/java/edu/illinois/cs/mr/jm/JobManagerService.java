@@ -3,6 +3,8 @@ package edu.illinois.cs.mr.jm;
 import java.io.File;
 import java.io.IOException;
 
+import edu.illinois.cs.mr.fs.QualifiedPath;
+
 /**
  * A JobManagerService manages the execution of jobs.
  * 
@@ -18,23 +20,45 @@ public interface JobManagerService {
      * <ul>
      * <li>MapperClass (mandatory): fully qualified name of the class
      * implementing the map function. The class must extend
-     * {@link edu.illinois.cs.mapreduce.api.Mapper}</li>
+     * {@link edu.illinois.cs.mapreduce.api.Mapper}. Mappers for small records
+     * can extend {@link edu.illinois.cs.mapreduce.api.BatchMapper} to be
+     * given batches of records</li>
      * <li>CombinerClass (optional): fully qualified name of the class
      * implementing the combined function. Depending on the job, this may be the
      * same as the reduce function. The class must extend
-     * {@link edu.illinois.cs.mapreduce.api.Reducer}</li>
+     * {@link edu.illinois.cs.mapreduce.api.Reducer}. The combiner must write
+     * its output under the key it was called with</li>
      * <li>ReducerClass (mandatory): fully qualified name of the class
      * implementing the reduce function. The class must extend
      * {@link edu.illinois.cs.mapreduce.api.Reducer}</li>
      * <li>InputFormatClass (mandatory): fully qualified name of the class
      * implementing the input format. The class must extend
-     * {@link edu.illinois.cs.mapreduce.api.InputFormat}</li>
+     * {@link edu.illinois.cs.mapreduce.api.InputFormat}. Line-based mappers
+     * that can work on bytes read faster with
+     * {@link edu.illinois.cs.mapreduce.api.lib.MappedTextInputFormat}</li>
      * <li>OutputFormatClass (mandatory): fully qualified name of the class
      * implementing the output format. The class must extend
      * {@link edu.illinois.cs.mapreduce.api.OutputFormat}</li>
+     * <li>SerializationClass (optional): fully qualified name of the class
+     * used to serialize intermediate keys and values. The class must extend
+     * {@link edu.illinois.cs.mapreduce.api.Serialization}. Defaults to
+     * {@link edu.illinois.cs.mapreduce.api.lib.BinarySerialization}</li>
+     * <li>PartitionerClass (optional): fully qualified name of the class
+     * assigning intermediate keys to reduce tasks. The class must extend
+     * {@link edu.illinois.cs.mapreduce.api.Partitioner}. Defaults to
+     * {@link edu.illinois.cs.mapreduce.api.lib.HashPartitioner}</li>
+     * <li>ComparatorClass (optional): fully qualified name of the class used
+     * to sort intermediate keys in their serialized form. The class must
+     * implement {@link edu.illinois.cs.mapreduce.api.RawComparator}, and sorts
+     * faster if it implements
+     * {@link edu.illinois.cs.mapreduce.api.NormalizedKeyComparator}. Defaults
+     * to the comparator provided by the serialization</li>
      * </ul>
      * The job jar can optionally include a job.properties file to provide
-     * configuration properties for the implemented extensions.
+     * configuration properties for the implemented extensions and for the
+     * framework. Framework properties are described with the constants that
+     * name them in {@link JobDescriptor}, {@link JobManager} and the task
+     * executor's TaskRunner.
      * </p>
      * <p>
      * Depending on the node configuration, the job may be split into several
@@ -67,7 +91,8 @@ public interface JobManagerService {
 
     /**
      * Writes the output for a given job to the given file location. Returns
-     * true if the job has succeeded and the file could be written.
+     * true if the job has succeeded and the file could be written. The outputs
+     * of all reduce tasks are concatenated in partition order.
      * 
      * @param jobID
      * @param file
@@ -88,4 +113,17 @@ public interface JobManagerService {
      */
     boolean updateStatus(AttemptStatus[] statuses) throws IOException;
 
+    /**
+     * Called by reduce tasks to locate the map outputs they need to fetch.
+     * Returns the location of the given partition for every map task of the
+     * job in task order. Entries for map tasks that have not succeeded yet are
+     * null. Returns null if the job is unknown, failed or was canceled.
+     * 
+     * @param jobID
+     * @param partition
+     * @return
+     * @throws IOException
+     */
+    QualifiedPath[] getMapOutputs(JobID jobID, int partition) throws IOException;
+
 }
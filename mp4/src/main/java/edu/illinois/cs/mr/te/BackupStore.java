@@ -0,0 +1,158 @@
+package edu.illinois.cs.mr.te;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import edu.illinois.cs.mapreduce.api.Serialization;
+import edu.illinois.cs.mapreduce.api.lib.VarInt;
+import edu.illinois.cs.mr.fs.FileSystem;
+import edu.illinois.cs.mr.fs.Path;
+import edu.illinois.cs.mr.util.DataInputBuffer;
+import edu.illinois.cs.mr.util.DataOutputBuffer;
+
+/**
+ * Keeps a copy of the serialized values of one key so they can be iterated
+ * more than once. Values are buffered in memory up to a byte limit, the rest
+ * is written to a file on the local file system.
+ * 
+ * @author benjamin
+ * @param <V> value type
+ */
+class BackupStore<V> implements Closeable {
+
+    private final FileSystem fileSystem;
+    private final Serialization serialization;
+    private final Path path;
+    private final int memoryLimit;
+    private final DataOutputBuffer memory;
+    private final DataInputBuffer input;
+    private DataOutputStream file;
+    private DataInputStream replay;
+    private boolean spilled;
+
+    BackupStore(FileSystem fileSystem, Serialization serialization, Path path, int memoryLimit) {
+        this.fileSystem = fileSystem;
+        this.serialization = serialization;
+        this.path = path;
+        this.memoryLimit = memoryLimit;
+        this.memory = new DataOutputBuffer();
+        this.input = new DataInputBuffer();
+    }
+
+    /**
+     * Appends a serialized value.
+     */
+    void append(byte[] value, int offset, int length) throws IOException {
+        DataOutputStream out = memory;
+        if (spilled || memory.getLength() + length > memoryLimit) {
+            if (file == null) {
+                file = new DataOutputStream(fileSystem.write(path));
+                spilled = true;
+            }
+            out = file;
+        }
+        VarInt.writeVInt(out, length);
+        out.write(value, offset, length);
+    }
+
+    /**
+     * Returns an iterator over the stored values. No values may be appended
+     * once iteration has started.
+     */
+    Iterator<V> iterator() throws IOException {
+        closeStreams();
+        return new Iterator<V>() {
+            private final DataInputBuffer in = new DataInputBuffer().reset(memory.getData(), 0, memory.getLength());
+            private DataInputStream current = in;
+            private boolean eof;
+            private byte[] buffer = new byte[64];
+            private int length = -1;
+
+            @Override
+            public boolean hasNext() {
+                try {
+                    if (length < 0)
+                        length = readNext();
+                    return length >= 0;
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            private int readNext() throws IOException {
+                if (eof)
+                    return -1;
+                if (current == in && in.available() == 0) {
+                    if (!spilled) {
+                        eof = true;
+                        return -1;
+                    }
+                    current = replay = new DataInputStream(fileSystem.read(path));
+                }
+                int len = VarInt.readVInt(current);
+                if (len == RunWriter.EOF) {
+                    eof = true;
+                    closeStreams();
+                    return -1;
+                }
+                if (buffer.length < len)
+                    buffer = new byte[Math.max(len, buffer.length * 2)];
+                current.readFully(buffer, 0, len);
+                return len;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public V next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                try {
+                    V value = (V)serialization.deserialize(input.reset(buffer, 0, length));
+                    length = -1;
+                    return value;
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Discards all stored values.
+     */
+    void reset() throws IOException {
+        close();
+        memory.reset();
+    }
+
+    private void closeStreams() throws IOException {
+        if (file != null) {
+            VarInt.writeVInt(file, RunWriter.EOF);
+            file.close();
+            file = null;
+        }
+        if (replay != null) {
+            replay.close();
+            replay = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeStreams();
+        if (spilled) {
+            fileSystem.delete(path);
+            spilled = false;
+        }
+    }
+
+}
@@ -0,0 +1,120 @@
+package edu.illinois.cs.mr.te;
+
+import java.io.IOException;
+
+import edu.illinois.cs.mapreduce.api.Context;
+import edu.illinois.cs.mapreduce.api.LongIterator;
+import edu.illinois.cs.mapreduce.api.LongReducer;
+import edu.illinois.cs.mapreduce.api.RawComparator;
+import edu.illinois.cs.mapreduce.api.Reducer;
+
+/**
+ * Applies a job's combiner to sorted intermediate data and keeps track of how
+ * much it shrinks the data. Once enough records have been combined, the
+ * combiner disables itself if the number of records was not reduced by at
+ * least the configured fraction, since combining then costs more than it
+ * saves. A combiner that is a {@link LongReducer} is given primitive values
+ * where the input is serialized.
+ * 
+ * @author benjamin
+ * @param <K> key type
+ * @param <V> value type
+ */
+class Combiner<K, V> {
+
+    // number of input records before the reduction is evaluated
+    private static final long MIN_SAMPLE = 1000;
+
+    private final Reducer<K, V, K, V> reducer;
+    private final LongReducer<K, K, V> longReducer;
+    private final RawComparator<Object> comparator;
+    private final double minReduction;
+    private final boolean reuseObjects;
+    private long inputRecords;
+    private long outputRecords;
+    private boolean enabled;
+
+    /**
+     * @param reducer the job's combiner
+     * @param comparator raw comparator used to group keys
+     * @param minReduction minimum fraction of records the combiner must
+     *            eliminate to stay enabled
+     * @param reuseObjects whether the combiner's input keys and values may be
+     *            read into the previous instances
+     */
+    @SuppressWarnings("unchecked")
+    Combiner(Reducer<K, V, K, V> reducer, RawComparator<Object> comparator, double minReduction,
+             boolean reuseObjects) {
+        this.reducer = reducer;
+        if (reducer instanceof LongReducer)
+            this.longReducer = (LongReducer<K, K, V>)(Reducer<?, ?, ?, ?>)reducer;
+        else
+            this.longReducer = null;
+        this.comparator = comparator;
+        this.minReduction = minReduction;
+        this.reuseObjects = reuseObjects;
+        this.enabled = true;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    boolean reusesObjects() {
+        return reuseObjects;
+    }
+
+    boolean reducesLongs() {
+        return longReducer != null;
+    }
+
+    /**
+     * Combines the values of a single key.
+     */
+    void reduce(K key, Iterable<V> values, Context<K, V> context) throws IOException {
+        reducer.reduce(key, values, context);
+    }
+
+    /**
+     * Combines the primitive values of a single key, if the combiner is a
+     * {@link LongReducer}.
+     */
+    void reduce(K key, LongIterator values, Context<K, V> context) throws IOException {
+        longReducer.reduce(key, values, context);
+    }
+
+    /**
+     * Combines the merged records and writes the result to the given writer.
+     * The writer is not closed.
+     */
+    void combine(MergeQueue<K, V> input, final RunWriter<K, V> writer) throws IOException {
+        Grouper<K, V> grouper = new Grouper<K, V>(input, comparator, null, reuseObjects);
+        final long[] written = new long[1];
+        Context<K, V> context = new Context<K, V>() {
+            @Override
+            public void write(K key, V value) throws IOException {
+                writer.append(key, value);
+                written[0]++;
+            }
+        };
+        while (grouper.nextKey()) {
+            if (longReducer != null)
+                longReducer.reduce(grouper.getKey(), grouper.getLongValues(), context);
+            else
+                reducer.reduce(grouper.getKey(), grouper.getValues(), context);
+        }
+        record(grouper.getRecordCount(), written[0]);
+    }
+
+    /**
+     * Records the number of records that went into and came out of the
+     * combiner and disables it if the reduction is too small.
+     */
+    void record(long in, long out) {
+        inputRecords += in;
+        outputRecords += out;
+        if (inputRecords >= MIN_SAMPLE && outputRecords > (1 - minReduction) * inputRecords)
+            enabled = false;
+    }
+
+}
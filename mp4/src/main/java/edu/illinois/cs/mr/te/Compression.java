@@ -0,0 +1,36 @@
+package edu.illinois.cs.mr.te;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import edu.illinois.cs.mapreduce.api.CompressionCodec;
+
+/**
+ * Applies an optional codec to streams of intermediate data.
+ * 
+ * @author benjamin
+ */
+final class Compression {
+
+    private Compression() {
+        super();
+    }
+
+    /**
+     * Returns a stream that compresses with the given codec, or the stream
+     * itself if the codec is null.
+     */
+    static OutputStream compress(CompressionCodec codec, OutputStream os) throws IOException {
+        return codec == null ? os : codec.createOutputStream(os);
+    }
+
+    /**
+     * Returns a stream that decompresses with the given codec, or the stream
+     * itself if the codec is null.
+     */
+    static InputStream decompress(CompressionCodec codec, InputStream is) throws IOException {
+        return codec == null ? is : codec.createInputStream(is);
+    }
+
+}
@@ -0,0 +1,204 @@
+package edu.illinois.cs.mr.te;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import edu.illinois.cs.mapreduce.api.LongIterator;
+import edu.illinois.cs.mapreduce.api.RawComparator;
+
+/**
+ * Groups the sorted records of a merge by key. The values of each key are
+ * pulled from the merge as the reducer iterates over them, so no key's values
+ * are held in memory. By default the values can be iterated only once; with a
+ * {@link BackupStore} they are copied as they are read and can be iterated
+ * again. Values the reducer does not consume are skipped when moving to the
+ * next key. If objects are reused, all keys are read into one instance and all
+ * values into another. Numeric values can also be read as primitives.
+ * 
+ * @author benjamin
+ * @param <K> key type
+ * @param <V> value type
+ */
+class Grouper<K, V> {
+
+    private final MergeQueue<K, V> input;
+    private final RawComparator<Object> comparator;
+    private final BackupStore<V> store;
+    private final boolean reuseObjects;
+    private byte[] keyBytes = new byte[64];
+    private int keyLength;
+    private K key;
+    private V value;
+    private Values values;
+    // whether the merge is positioned on a record that has not been consumed
+    private boolean pending;
+    // whether that record belongs to the current key
+    private boolean sameKey;
+    private long records;
+
+    /**
+     * @param input merged records
+     * @param comparator raw comparator used to group keys
+     * @param store backup store for iterating values more than once, or null
+     * @param reuseObjects whether keys and values are read into the previous
+     *            instances
+     * @throws IOException
+     */
+    Grouper(MergeQueue<K, V> input, RawComparator<Object> comparator, BackupStore<V> store, boolean reuseObjects)
+        throws IOException {
+        this.input = input;
+        this.comparator = comparator;
+        this.store = store;
+        this.reuseObjects = reuseObjects;
+        this.pending = input.next();
+        if (pending)
+            records++;
+    }
+
+    /**
+     * Advances to the next key, skipping any values of the current key that
+     * have not been consumed.
+     * 
+     * @return false if there are no more keys
+     * @throws IOException
+     */
+    boolean nextKey() throws IOException {
+        while (sameKey)
+            advance();
+        if (!pending)
+            return false;
+        keyLength = input.getKeyLength();
+        if (keyBytes.length < keyLength)
+            keyBytes = new byte[Math.max(keyLength, keyBytes.length * 2)];
+        System.arraycopy(input.getKeyBytes(), 0, keyBytes, 0, keyLength);
+        key = reuseObjects ? input.getKey(key) : input.getKey();
+        sameKey = true;
+        if (store != null)
+            store.reset();
+        values = new Values();
+        return true;
+    }
+
+    K getKey() {
+        return key;
+    }
+
+    Iterable<V> getValues() {
+        return values;
+    }
+
+    /**
+     * Returns the values of the current key as primitives. This counts as the
+     * first iteration of {@link #getValues()}, so the values can only be
+     * iterated again as objects from the backup store.
+     */
+    LongIterator getLongValues() {
+        return values.longIterator();
+    }
+
+    /**
+     * Returns the number of records read from the merge so far.
+     */
+    long getRecordCount() {
+        return records;
+    }
+
+    private void advance() throws IOException {
+        pending = input.next();
+        if (pending)
+            records++;
+        sameKey = pending
+            && comparator.compare(keyBytes, 0, keyLength, input.getKeyBytes(), 0, input.getKeyLength()) == 0;
+    }
+
+    private V consume() throws IOException {
+        value = reuseObjects ? input.getValue(value) : input.getValue();
+        if (store != null)
+            store.append(input.getValueBytes(), 0, input.getValueLength());
+        advance();
+        return value;
+    }
+
+    private long consumeLong() throws IOException {
+        long value = input.getLongValue();
+        if (store != null)
+            store.append(input.getValueBytes(), 0, input.getValueLength());
+        advance();
+        return value;
+    }
+
+    /**
+     * Values of one key. The first iterator reads from the merge, later
+     * iterators replay the backup store.
+     */
+    private class Values implements Iterable<V> {
+
+        private boolean iterated;
+
+        @Override
+        public Iterator<V> iterator() {
+            if (this != values)
+                throw new IllegalStateException("values of a previous key");
+            if (!iterated) {
+                iterated = true;
+                return new Iterator<V>() {
+                    @Override
+                    public boolean hasNext() {
+                        return Values.this == values && sameKey;
+                    }
+
+                    @Override
+                    public V next() {
+                        if (!hasNext())
+                            throw new NoSuchElementException();
+                        try {
+                            return consume();
+                        } catch (IOException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+            if (store == null)
+                throw new IllegalStateException("values can only be iterated once");
+            try {
+                while (sameKey) {
+                    store.append(input.getValueBytes(), 0, input.getValueLength());
+                    advance();
+                }
+                return store.iterator();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        LongIterator longIterator() {
+            if (iterated)
+                throw new IllegalStateException("values have been iterated");
+            iterated = true;
+            return new LongIterator() {
+                @Override
+                public boolean hasNext() {
+                    return Values.this == values && sameKey;
+                }
+
+                @Override
+                public long next() {
+                    if (!hasNext())
+                        throw new NoSuchElementException();
+                    try {
+                        return consumeLong();
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package edu.illinois.cs.mr.te;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import edu.illinois.cs.mapreduce.api.Context;
+import edu.illinois.cs.mapreduce.api.Serialization;
+
+/**
+ * Groups key/value pairs by key in a hash table, for jobs that do not need
+ * sorted input. If a {@link Combiner} is given, the table can be compacted by
+ * combining the values of each key in place, which keeps the table small for
+ * aggregations such as counts and sums. Since the table keeps the keys and
+ * values, the combiner's output is copied. Keys are grouped by their
+ * <code>equals</code> and <code>hashCode</code> methods, so arrays, which do
+ * not compare by content, are rejected.
+ * 
+ * @author benjamin
+ * @param <K> key type
+ * @param <V> value type
+ */
+class HashAggregator<K, V> {
+
+    private final Combiner<K, V> combiner;
+    private final Serialization serialization;
+    private Map<K, List<V>> table;
+    private int size;
+
+    /**
+     * @param combiner combiner used to compact the table, or null
+     * @param serialization serialization used to copy the combiner's output
+     */
+    HashAggregator(Combiner<K, V> combiner, Serialization serialization) {
+        this.combiner = combiner;
+        this.serialization = serialization;
+        this.table = new HashMap<K, List<V>>();
+    }
+
+    void add(K key, V value) {
+        if (key != null && key.getClass().isArray())
+            throw new IllegalArgumentException("array keys cannot be grouped by hash: " + key.getClass().getName());
+        List<V> values = table.get(key);
+        if (values == null)
+            table.put(key, values = new ArrayList<V>(2));
+        values.add(value);
+        size++;
+    }
+
+    /**
+     * Returns the number of values in the table.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Combines the values of each key, if there is an enabled combiner.
+     * 
+     * @return true if the table was compacted
+     * @throws IOException
+     */
+    boolean compact() throws IOException {
+        if (combiner == null || !combiner.isEnabled())
+            return false;
+        Map<K, List<V>> old = table;
+        int oldSize = size;
+        table = new HashMap<K, List<V>>(old.size() * 2);
+        size = 0;
+        Context<K, V> context = new Context<K, V>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public void write(K key, V value) throws IOException {
+                add((K)serialization.copy(key), (V)serialization.copy(value));
+            }
+        };
+        for (Entry<K, List<V>> entry : old.entrySet())
+            combiner.reduce(entry.getKey(), entry.getValue(), context);
+        combiner.record(oldSize, size);
+        return true;
+    }
+
+    /**
+     * Returns the keys and their values in no particular order.
+     */
+    Iterable<Entry<K, List<V>>> entries() {
+        return table.entrySet();
+    }
+
+    void clear() {
+        table = new HashMap<K, List<V>>();
+        size = 0;
+    }
+
+}
@@ -0,0 +1,152 @@
+package edu.illinois.cs.mr.te;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+
+import edu.illinois.cs.mapreduce.api.CompressionCodec;
+import edu.illinois.cs.mapreduce.api.Partitioner;
+import edu.illinois.cs.mapreduce.api.RecordBatch;
+import edu.illinois.cs.mapreduce.api.Serialization;
+import edu.illinois.cs.mr.fs.FileSystem;
+import edu.illinois.cs.mr.fs.Path;
+import edu.illinois.cs.mr.jm.Attempt;
+
+/**
+ * Collects the map output of unordered jobs in one {@link HashAggregator} per
+ * partition. When the configured number of records is reached, the tables are
+ * compacted with the combiner; only if that does not free at least half of
+ * the buffer are they spilled. Nothing is sorted: the spills of a partition
+ * are simply concatenated into the partition's map output file. Spills and
+ * map output files are compressed with separate, optional codecs. Keys and
+ * values are copied before they are added, so mappers may reuse them.
+ * 
+ * @author benjamin
+ * @param <K> key type
+ * @param <V> value type
+ */
+class HashMapOutputContext<K, V> implements MapOutput<K, V> {
+
+    private final Partitioner<K, V> partitioner;
+    private final Serialization serialization;
+    private final FileSystem fileSystem;
+    private final Attempt attempt;
+    private final CompressionCodec outputCodec;
+    private final CompressionCodec spillCodec;
+    private final int bufferLimit;
+    private final List<HashAggregator<K, V>> partitions;
+    private int numSpills;
+    private int buffered;
+
+    HashMapOutputContext(Combiner<K, V> combiner,
+                         Partitioner<K, V> partitioner,
+                         int numPartitions,
+                         Serialization serialization,
+                         FileSystem fileSystem,
+                         Attempt attempt,
+                         CompressionCodec outputCodec,
+                         CompressionCodec spillCodec,
+                         int bufferLimit) {
+        this.partitioner = partitioner;
+        this.serialization = serialization;
+        this.fileSystem = fileSystem;
+        this.attempt = attempt;
+        this.outputCodec = outputCodec;
+        this.spillCodec = spillCodec;
+        this.bufferLimit = bufferLimit;
+        this.partitions = new ArrayList<HashAggregator<K, V>>(numPartitions);
+        for (int i = 0; i < numPartitions; i++)
+            partitions.add(new HashAggregator<K, V>(combiner, serialization));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void write(K key, V value) throws IOException {
+        int partition = partitions.size() == 1 ? 0 : partitioner.getPartition(key, value, partitions.size());
+        partitions.get(partition).add((K)serialization.copy(key), (V)serialization.copy(value));
+        if (++buffered >= bufferLimit)
+            compact();
+    }
+
+    @Override
+    public void write(RecordBatch<K, V> batch) throws IOException {
+        for (int i = 0; i < batch.size(); i++)
+            write(batch.getKey(i), batch.getValue(i));
+    }
+
+    private void compact() throws IOException {
+        buffered = 0;
+        for (HashAggregator<K, V> partition : partitions) {
+            partition.compact();
+            buffered += partition.size();
+        }
+        if (buffered > bufferLimit / 2)
+            spill();
+    }
+
+    private Path getSpillPath(int spill, int partition) {
+        Path outputPath = attempt.getOutputPath();
+        return outputPath.beforeLast().append(outputPath.last() + "-spill" + spill + "-" + partition);
+    }
+
+    private void spill() throws IOException {
+        for (int i = 0; i < partitions.size(); i++) {
+            flush(partitions.get(i), getSpillPath(numSpills, i), spillCodec);
+            partitions.get(i).clear();
+        }
+        numSpills++;
+        buffered = 0;
+    }
+
+    private void flush(HashAggregator<K, V> partition, Path path, CompressionCodec codec) throws IOException {
+        OutputStream os = Compression.compress(codec, fileSystem.write(path));
+        RunWriter<K, V> writer = new RunWriter<K, V>(os, serialization);
+        try {
+            for (Entry<K, List<V>> entry : partition.entries())
+                for (V value : entry.getValue())
+                    writer.append(entry.getKey(), value);
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (numSpills == 0) {
+            for (int i = 0; i < partitions.size(); i++)
+                flush(partitions.get(i), attempt.getOutputPath(i), outputCodec);
+            return;
+        }
+        if (buffered > 0)
+            spill();
+        try {
+            for (int i = 0; i < partitions.size(); i++) {
+                OutputStream os = Compression.compress(outputCodec, fileSystem.write(attempt.getOutputPath(i)));
+                RunWriter<Object, Object> writer = new RunWriter<Object, Object>(os, serialization);
+                try {
+                    for (int spill = 0; spill < numSpills; spill++) {
+                        InputStream is = Compression.decompress(spillCodec, fileSystem.read(getSpillPath(spill, i)));
+                        RunReader<Object, Object> reader = new RunReader<Object, Object>(is, serialization);
+                        try {
+                            while (reader.next())
+                                writer.append(reader.getKeyBytes(), 0, reader.getKeyLength(),
+                                              reader.getValueBytes(), 0, reader.getValueLength());
+                        } finally {
+                            reader.close();
+                        }
+                    }
+                } finally {
+                    writer.close();
+                }
+            }
+        } finally {
+            for (int i = 0; i < partitions.size(); i++)
+                for (int spill = 0; spill < numSpills; spill++)
+                    fileSystem.delete(getSpillPath(spill, i));
+        }
+    }
+
+}
@@ -0,0 +1,17 @@
+package edu.illinois.cs.mr.te;
+
+import java.io.Closeable;
+
+import edu.illinois.cs.mapreduce.api.BatchContext;
+
+/**
+ * Context that collects the output of a map task. Closing the context writes
+ * the map output files, one per partition.
+ * 
+ * @author benjamin
+ * @param <K> key type
+ * @param <V> value type
+ */
+interface MapOutput<K, V> extends BatchContext<K, V>, Closeable {
+
+}
@@ -0,0 +1,370 @@
+package edu.illinois.cs.mr.te;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import edu.illinois.cs.mapreduce.api.CompressionCodec;
+import edu.illinois.cs.mapreduce.api.Context;
+import edu.illinois.cs.mapreduce.api.LongIterator;
+import edu.illinois.cs.mapreduce.api.Partitioner;
+import edu.illinois.cs.mapreduce.api.RecordBatch;
+import edu.illinois.cs.mapreduce.api.RawComparator;
+import edu.illinois.cs.mapreduce.api.Serialization;
+import edu.illinois.cs.mr.fs.FileSystem;
+import edu.illinois.cs.mr.fs.Path;
+import edu.illinois.cs.mr.jm.Attempt;
+import edu.illinois.cs.mr.util.DataInputBuffer;
+import edu.illinois.cs.mr.util.DataOutputBuffer;
+
+/**
+ * Serializes map output into one of two {@link SortBuffer}s, each with half of
+ * the configured byte capacity. When the active buffer is full, it is handed
+ * to a background thread that sorts it by partition and key, combines each
+ * partition (if a combiner is set and still enabled) and spills it to a
+ * separate file per partition. Meanwhile the map keeps writing to the other
+ * buffer, and only blocks if that one fills up before the spill is done. When
+ * the context is closed, the spills of each partition are merged into the
+ * partition's map output file. If the first buffer never fills up, the output
+ * is written directly without spilling. Buffers are sorted in parallel with
+ * as many of the task executor's sort threads as are idle. Spills and map
+ * output files are compressed with separate, optional codecs.
+ * 
+ * @author benjamin
+ * @param <K> key type
+ * @param <V> value type
+ */
+class MapOutputContext<K, V> implements MapOutput<K, V> {
+
+    private final Combiner<K, V> combiner;
+    private final Partitioner<K, V> partitioner;
+    private final int numPartitions;
+    private final Serialization serialization;
+    private final Merger merger;
+    private final FileSystem fileSystem;
+    private final Attempt attempt;
+    private final CompressionCodec outputCodec;
+    private final CompressionCodec spillCodec;
+    private final ExecutorService spillExecutor;
+    private final TaskExecutor taskExecutor;
+    private final ClassLoader classLoader;
+    private final DataOutputBuffer keyBuffer;
+    private final DataOutputBuffer valueBuffer;
+    private final DataInputBuffer inputBuffer;
+    private SortBuffer buffer;
+    private SortBuffer spare;
+    private Future<?> spilling;
+    private int numSpills;
+
+    MapOutputContext(Combiner<K, V> combiner,
+                     Partitioner<K, V> partitioner,
+                     int numPartitions,
+                     Serialization serialization,
+                     RawComparator<Object> comparator,
+                     Merger merger,
+                     FileSystem fileSystem,
+                     Attempt attempt,
+                     CompressionCodec outputCodec,
+                     CompressionCodec spillCodec,
+                     int bufferSize,
+                     ExecutorService spillExecutor,
+                     TaskExecutor taskExecutor) {
+        this.combiner = combiner;
+        this.partitioner = partitioner;
+        this.numPartitions = numPartitions;
+        this.serialization = serialization;
+        this.merger = merger;
+        this.fileSystem = fileSystem;
+        this.attempt = attempt;
+        this.outputCodec = outputCodec;
+        this.spillCodec = spillCodec;
+        this.spillExecutor = spillExecutor;
+        this.taskExecutor = taskExecutor;
+        this.classLoader = Thread.currentThread().getContextClassLoader();
+        this.buffer = new SortBuffer(bufferSize / 2, comparator);
+        this.spare = new SortBuffer(bufferSize / 2, comparator);
+        this.keyBuffer = new DataOutputBuffer();
+        this.valueBuffer = new DataOutputBuffer();
+        this.inputBuffer = new DataInputBuffer();
+    }
+
+    @Override
+    public void write(K key, V value) throws IOException {
+        int partition = numPartitions == 1 ? 0 : partitioner.getPartition(key, value, numPartitions);
+        serialization.serialize(key, keyBuffer.reset());
+        serialization.serialize(value, valueBuffer.reset());
+        byte[] k = keyBuffer.getData(), v = valueBuffer.getData();
+        int klen = keyBuffer.getLength(), vlen = valueBuffer.getLength();
+        if (!buffer.add(partition, k, klen, v, vlen)) {
+            spill();
+            buffer.add(partition, k, klen, v, vlen);
+        }
+    }
+
+    @Override
+    public void write(RecordBatch<K, V> batch) throws IOException {
+        for (int i = 0; i < batch.size(); i++)
+            write(batch.getKey(i), batch.getValue(i));
+    }
+
+    /**
+     * Returns the path of the given spill and partition, or of the partition's
+     * map output file if the spill is negative.
+     */
+    private Path getPath(int spill, int partition) {
+        if (spill < 0)
+            return attempt.getOutputPath(partition);
+        Path outputPath = attempt.getOutputPath();
+        return outputPath.beforeLast().append(outputPath.last() + "-spill" + spill + "-" + partition);
+    }
+
+    /**
+     * Hands the active buffer to the spill thread and switches to the spare
+     * buffer, after waiting for the previous spill to complete.
+     */
+    private void spill() throws IOException {
+        awaitSpill();
+        final SortBuffer full = buffer;
+        final int spill = numSpills++;
+        buffer = spare;
+        spare = full;
+        spilling = spillExecutor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                // user types are resolved through the context class loader
+                Thread thread = Thread.currentThread();
+                ClassLoader contextClassLoader = thread.getContextClassLoader();
+                thread.setContextClassLoader(classLoader);
+                try {
+                    flush(full, spill);
+                } finally {
+                    thread.setContextClassLoader(contextClassLoader);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Waits for the running spill, if any, and rethrows its exception.
+     */
+    private void awaitSpill() throws IOException {
+        if (spilling == null)
+            return;
+        try {
+            spilling.get();
+        } catch (InterruptedException e) {
+            spilling.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable t = e.getCause();
+            if (t instanceof IOException)
+                throw (IOException)t;
+            if (t instanceof Error)
+                throw (Error)t;
+            if (t instanceof RuntimeException)
+                throw (RuntimeException)t;
+            throw new RuntimeException(e);
+        } finally {
+            spilling = null;
+        }
+    }
+
+    /**
+     * Sorts the given buffer and writes one file per partition.
+     */
+    private void flush(SortBuffer buffer, int spill) throws IOException {
+        int threads = taskExecutor.acquireSortThreads(buffer.getMaxParallelism() - 1);
+        try {
+            buffer.sort(taskExecutor.getSortExecutorService(), threads);
+        } finally {
+            taskExecutor.releaseSortThreads(threads);
+        }
+        int size = buffer.size();
+        int from = 0;
+        for (int partition = 0; partition < numPartitions; partition++) {
+            int to = from;
+            while (to < size && buffer.getPartition(to) == partition)
+                to++;
+            CompressionCodec codec = spill < 0 ? outputCodec : spillCodec;
+            OutputStream os = Compression.compress(codec, fileSystem.write(getPath(spill, partition)));
+            RunWriter<K, V> writer = new RunWriter<K, V>(os, serialization);
+            try {
+                if (combiner == null || !combiner.isEnabled())
+                    write(writer, buffer, from, to);
+                else
+                    combine(writer, buffer, from, to);
+            } finally {
+                writer.close();
+            }
+            from = to;
+        }
+        buffer.reset();
+    }
+
+    private void write(RunWriter<K, V> writer, SortBuffer buffer, int from, int to) throws IOException {
+        byte[] data = buffer.getData();
+        for (int i = from; i < to; i++)
+            writer.append(data, buffer.getKeyOffset(i), buffer.getKeyLength(i), data, buffer.getValueOffset(i),
+                          buffer.getValueLength(i));
+    }
+
+    private void combine(final RunWriter<K, V> writer, SortBuffer buffer, int from, int to) throws IOException {
+        final long[] written = new long[1];
+        Context<K, V> context = new Context<K, V>() {
+            @Override
+            public void write(K key, V value) throws IOException {
+                writer.append(key, value);
+                written[0]++;
+            }
+        };
+        boolean reuse = combiner.reusesObjects();
+        K key = null;
+        int start = from;
+        while (start < to) {
+            int end = start + 1;
+            while (end < to && buffer.equals(start, end))
+                end++;
+            key = deserialize(buffer, buffer.getKeyOffset(start), buffer.getKeyLength(start), reuse ? key : null);
+            if (combiner.reducesLongs())
+                combiner.reduce(key, new NumericValues(buffer, start, end), context);
+            else
+                combiner.reduce(key, new Values(buffer, start, end, reuse), context);
+            start = end;
+        }
+        combiner.record(to - from, written[0]);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T deserialize(SortBuffer buffer, int offset, int length, T reuse) throws IOException {
+        return (T)serialization.deserialize(inputBuffer.reset(buffer.getData(), offset, length), reuse);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (numSpills == 0) {
+            flush(buffer, -1);
+            return;
+        }
+        if (!buffer.isEmpty())
+            spill();
+        try {
+            awaitSpill();
+            for (int i = 0; i < numPartitions; i++) {
+                List<Merger.Segment> segments = new ArrayList<Merger.Segment>(numSpills);
+                for (int spill = 0; spill < numSpills; spill++) {
+                    final Path path = getPath(spill, i);
+                    segments.add(new Merger.Segment() {
+                        @Override
+                        public InputStream open() throws IOException {
+                            return Compression.decompress(spillCodec, fileSystem.read(path));
+                        }
+                    });
+                }
+                merger.merge(segments, Compression.compress(outputCodec, fileSystem.write(getPath(-1, i))));
+            }
+        } finally {
+            for (int i = 0; i < numPartitions; i++)
+                for (int spill = 0; spill < numSpills; spill++)
+                    fileSystem.delete(getPath(spill, i));
+        }
+    }
+
+    /**
+     * Decodes the values of a range of sorted records into primitives as they
+     * are iterated over.
+     */
+    private class NumericValues implements LongIterator {
+
+        private final SortBuffer buffer;
+        private final int to;
+        private int next;
+
+        NumericValues(SortBuffer buffer, int from, int to) {
+            this.buffer = buffer;
+            this.next = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < to;
+        }
+
+        @Override
+        public long next() {
+            if (next >= to)
+                throw new NoSuchElementException();
+            try {
+                long value = serialization.deserializeLong(buffer.getData(), buffer.getValueOffset(next),
+                                                           buffer.getValueLength(next));
+                next++;
+                return value;
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Deserializes the values of a range of sorted records as they are
+     * iterated over, into a single instance if objects are reused.
+     */
+    private class Values implements Iterable<V> {
+
+        private final SortBuffer buffer;
+        private final int from;
+        private final int to;
+        private final boolean reuse;
+
+        Values(SortBuffer buffer, int from, int to, boolean reuse) {
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+            this.reuse = reuse;
+        }
+
+        @Override
+        public Iterator<V> iterator() {
+            return new Iterator<V>() {
+                private int next = from;
+                private V value;
+
+                @Override
+                public boolean hasNext() {
+                    return next < to;
+                }
+
+                @Override
+                public V next() {
+                    if (next >= to)
+                        throw new NoSuchElementException();
+                    try {
+                        value = deserialize(buffer, buffer.getValueOffset(next), buffer.getValueLength(next),
+                                            reuse ? value : null);
+                        next++;
+                        return value;
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+
+}
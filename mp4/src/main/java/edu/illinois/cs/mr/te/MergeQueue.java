@@ -0,0 +1,127 @@
+package edu.illinois.cs.mr.te;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import edu.illinois.cs.mapreduce.api.RawComparator;
+import edu.illinois.cs.mapreduce.api.Serialization;
+
+/**
+ * Merges sorted runs into a single sorted sequence of records. The runs are
+ * kept in a priority queue ordered by the serialized key of their current
+ * record, so each record costs O(log k) comparisons for k runs. Runs are
+ * closed as soon as they are exhausted, closing the queue closes the remaining
+ * runs.
+ * 
+ * @author benjamin
+ * @param <K> key type
+ * @param <V> value type
+ */
+class MergeQueue<K, V> implements Closeable {
+
+    private final PriorityQueue<RunReader<K, V>> queue;
+    private RunReader<K, V> current;
+
+    MergeQueue(List<InputStream> inputStreams, Serialization serialization, final RawComparator<Object> comparator)
+        throws IOException {
+        Comparator<RunReader<K, V>> headComparator = new Comparator<RunReader<K, V>>() {
+            @Override
+            public int compare(RunReader<K, V> r1, RunReader<K, V> r2) {
+                return comparator.compare(r1.getKeyBytes(), 0, r1.getKeyLength(), r2.getKeyBytes(), 0,
+                                          r2.getKeyLength());
+            }
+        };
+        this.queue = new PriorityQueue<RunReader<K, V>>(Math.max(1, inputStreams.size()), headComparator);
+        List<RunReader<K, V>> readers = new ArrayList<RunReader<K, V>>(inputStreams.size());
+        for (InputStream is : inputStreams)
+            readers.add(new RunReader<K, V>(is, serialization));
+        try {
+            for (RunReader<K, V> reader : readers)
+                offer(reader);
+        } catch (IOException e) {
+            for (RunReader<K, V> reader : readers)
+                reader.close();
+            throw e;
+        }
+    }
+
+    private void offer(RunReader<K, V> reader) throws IOException {
+        if (reader.next())
+            queue.add(reader);
+        else
+            reader.close();
+    }
+
+    /**
+     * Advances to the next record in key order.
+     * 
+     * @return false if all runs are exhausted
+     * @throws IOException
+     */
+    boolean next() throws IOException {
+        if (current != null)
+            offer(current);
+        current = queue.poll();
+        return current != null;
+    }
+
+    K getKey() throws IOException {
+        return current.getKey();
+    }
+
+    K getKey(K reuse) throws IOException {
+        return current.getKey(reuse);
+    }
+
+    V getValue() throws IOException {
+        return current.getValue();
+    }
+
+    V getValue(V reuse) throws IOException {
+        return current.getValue(reuse);
+    }
+
+    long getLongValue() throws IOException {
+        return current.getLongValue();
+    }
+
+    byte[] getKeyBytes() {
+        return current.getKeyBytes();
+    }
+
+    int getKeyLength() {
+        return current.getKeyLength();
+    }
+
+    byte[] getValueBytes() {
+        return current.getValueBytes();
+    }
+
+    int getValueLength() {
+        return current.getValueLength();
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException exception = null;
+        if (current != null)
+            queue.add(current);
+        current = null;
+        for (RunReader<K, V> reader : queue) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                exception = e;
+            }
+        }
+        queue.clear();
+        if (exception != null)
+            throw exception;
+    }
+
+}
@@ -0,0 +1,200 @@
+package edu.illinois.cs.mr.te;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import edu.illinois.cs.mapreduce.api.CompressionCodec;
+import edu.illinois.cs.mapreduce.api.RawComparator;
+import edu.illinois.cs.mapreduce.api.Serialization;
+import edu.illinois.cs.mr.fs.FileSystem;
+import edu.illinois.cs.mr.fs.Path;
+
+/**
+ * Merges sorted runs in one or more passes. At most <code>factor</code> runs
+ * are open at any time: if there are more runs, intermediate passes merge
+ * groups of runs into temporary files on the local file system until the
+ * remaining runs can be merged at once. The first pass merges just enough runs
+ * that every later pass merges exactly <code>factor</code> runs, which
+ * minimizes the number of records written to temporary files. If a
+ * {@link Combiner} is given, it is applied to every pass that writes a file.
+ * 
+ * @author benjamin
+ */
+class Merger {
+
+    /**
+     * A sorted run that is opened on demand.
+     */
+    interface Segment {
+        InputStream open() throws IOException;
+    }
+
+    private final FileSystem fileSystem;
+    private final Serialization serialization;
+    private final RawComparator<Object> comparator;
+    private final int factor;
+    private final Path tempPath;
+    private final Combiner<Object, Object> combiner;
+    private final CompressionCodec codec;
+
+    /**
+     * @param fileSystem local file system for intermediate passes
+     * @param serialization job serialization
+     * @param comparator raw comparator used to order keys
+     * @param factor maximum number of runs merged at once, at least 2
+     * @param tempPath path prefix for the files of intermediate passes
+     * @param combiner combiner applied to passes that write files, or null
+     * @param codec codec for the files of intermediate passes, or null
+     */
+    Merger(FileSystem fileSystem,
+           Serialization serialization,
+           RawComparator<Object> comparator,
+           int factor,
+           Path tempPath,
+           Combiner<Object, Object> combiner,
+           CompressionCodec codec) {
+        if (factor < 2)
+            throw new IllegalArgumentException("merge factor must be at least 2: " + factor);
+        this.fileSystem = fileSystem;
+        this.serialization = serialization;
+        this.comparator = comparator;
+        this.factor = factor;
+        this.tempPath = tempPath;
+        this.combiner = combiner;
+        this.codec = codec;
+    }
+
+    /**
+     * Merges the given runs and writes the result to the given stream. The
+     * stream is closed when done.
+     */
+    void merge(List<? extends Segment> segments, OutputStream os) throws IOException {
+        List<Path> temps = new ArrayList<Path>();
+        try {
+            List<Segment> remaining = reduce(segments, temps);
+            merge(remaining, new RunWriter<Object, Object>(os, serialization));
+        } finally {
+            os.close();
+            delete(temps);
+        }
+    }
+
+    /**
+     * Runs the intermediate passes for the given runs and returns a queue over
+     * the final pass, so the merged records can be consumed without writing
+     * them to a file. Temporary files are deleted when the queue is closed.
+     */
+    <K, V> MergeQueue<K, V> open(List<? extends Segment> segments) throws IOException {
+        final List<Path> temps = new ArrayList<Path>();
+        boolean opened = false;
+        try {
+            List<InputStream> iss = openStreams(reduce(segments, temps));
+            MergeQueue<K, V> queue = new MergeQueue<K, V>(iss, serialization, comparator) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        delete(temps);
+                    }
+                }
+            };
+            opened = true;
+            return queue;
+        } finally {
+            if (!opened)
+                delete(temps);
+        }
+    }
+
+    private void delete(List<Path> paths) throws IOException {
+        for (Path path : paths)
+            fileSystem.delete(path);
+    }
+
+    /**
+     * Runs intermediate passes until at most <code>factor</code> runs remain.
+     * Temporary files are added to the given list; files consumed by a later
+     * pass are deleted right away.
+     */
+    private List<Segment> reduce(List<? extends Segment> segments, List<Path> temps) throws IOException {
+        LinkedList<Segment> queue = new LinkedList<Segment>(segments);
+        int count = getFirstPassCount(queue.size());
+        for (int pass = 0; queue.size() > factor; pass++) {
+            List<Segment> inputs = new ArrayList<Segment>(count);
+            for (int i = 0; i < count; i++)
+                inputs.add(queue.removeFirst());
+            Path path = tempPath.beforeLast().append(tempPath.last() + "-pass" + pass);
+            temps.add(path);
+            OutputStream os = Compression.compress(codec, fileSystem.write(path));
+            merge(inputs, new RunWriter<Object, Object>(os, serialization));
+            for (Segment input : inputs)
+                if (input instanceof TempSegment && temps.remove(((TempSegment)input).path))
+                    fileSystem.delete(((TempSegment)input).path);
+            queue.addLast(new TempSegment(path));
+            count = factor;
+        }
+        return queue;
+    }
+
+    /**
+     * Returns the number of runs to merge in the first pass so that all later
+     * passes merge exactly <code>factor</code> runs.
+     */
+    private int getFirstPassCount(int segments) {
+        if (segments <= factor)
+            return segments;
+        int mod = (segments - 1) % (factor - 1);
+        return mod == 0 ? factor : mod + 1;
+    }
+
+    private void merge(List<Segment> segments, RunWriter<Object, Object> writer) throws IOException {
+        try {
+            List<InputStream> iss = openStreams(segments);
+            MergeQueue<Object, Object> queue = new MergeQueue<Object, Object>(iss, serialization, comparator);
+            try {
+                if (combiner != null && combiner.isEnabled())
+                    combiner.combine(queue, writer);
+                else
+                    while (queue.next())
+                        writer.append(queue.getKeyBytes(), 0, queue.getKeyLength(), queue.getValueBytes(), 0,
+                                      queue.getValueLength());
+            } finally {
+                queue.close();
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static List<InputStream> openStreams(List<Segment> segments) throws IOException {
+        List<InputStream> iss = new ArrayList<InputStream>(segments.size());
+        try {
+            for (Segment segment : segments)
+                iss.add(segment.open());
+        } catch (IOException e) {
+            for (InputStream is : iss)
+                is.close();
+            throw e;
+        }
+        return iss;
+    }
+
+    private class TempSegment implements Segment {
+
+        private final Path path;
+
+        TempSegment(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        public InputStream open() throws IOException {
+            return Compression.decompress(codec, fileSystem.read(path));
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package edu.illinois.cs.mr.te;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import edu.illinois.cs.mapreduce.api.BatchContext;
+import edu.illinois.cs.mapreduce.api.BatchMapper;
+import edu.illinois.cs.mapreduce.api.Mapper;
+import edu.illinois.cs.mapreduce.api.RecordBatch;
+import edu.illinois.cs.mapreduce.api.RecordReader;
+import edu.illinois.cs.mapreduce.api.TaskContext;
+
+/**
+ * Runs several mapper instances in parallel. The calling thread reads records
+ * into batches and hands them to a pool of threads through a bounded queue.
+ * Each thread applies its own mapper instance to the batches it takes, and
+ * hands them back to be refilled, so a reader that reuses objects fills the
+ * records of a mapped batch in place. All mappers write to the same output
+ * context, and writes are serialized, so the order of the map output is
+ * undefined. Each mapper is set up and cleaned up on its thread, and is given
+ * an equal share of the memory budget. A {@link BatchMapper} is given the
+ * batches as they are.
+ * 
+ * @author benjamin
+ * @param <K1> input key type
+ * @param <V1> input value type
+ * @param <K2> output key type
+ * @param <V2> output value type
+ */
+class MultithreadedMapRunner<K1, V1, K2, V2> {
+
+    // milliseconds between checks for failed mapper threads
+    private static final long POLL_INTERVAL = 100;
+
+    private final List<Mapper<K1, V1, K2, V2>> mappers;
+    private final int batchSize;
+    private final TaskContext task;
+    // signals the end of the input to a mapper thread
+    private final RecordBatch<K1, V1> end;
+
+    /**
+     * @param mappers one mapper instance per thread
+     * @param batchSize number of records handed to a thread at once
+     * @param task task attempt the mappers are set up for
+     */
+    MultithreadedMapRunner(List<Mapper<K1, V1, K2, V2>> mappers, int batchSize, TaskContext task) {
+        this.mappers = mappers;
+        this.batchSize = batchSize;
+        this.task = task;
+        this.end = new RecordBatch<K1, V1>(1);
+    }
+
+    /**
+     * Maps all records of the reader to the given context. Returns once all
+     * records have been mapped, or throws the first exception of any mapper.
+     */
+    void run(RecordReader<K1, V1> reader, BatchContext<K2, V2> context) throws IOException, InterruptedException {
+        int numThreads = mappers.size();
+        BlockingQueue<RecordBatch<K1, V1>> queue = new ArrayBlockingQueue<RecordBatch<K1, V1>>(2 * numThreads);
+        Queue<RecordBatch<K1, V1>> free = new ConcurrentLinkedQueue<RecordBatch<K1, V1>>();
+        BatchContext<K2, V2> output = new SynchronizedContext<K2, V2>(context);
+        TaskContext share = new TaskContext(task.getProperties(), task.getMemoryBudget() / numThreads);
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<Future<?>> futures = new ArrayList<Future<?>>(numThreads);
+        try {
+            for (Mapper<K1, V1, K2, V2> mapper : mappers)
+                futures.add(executor.submit(new MapperThread(mapper, queue, free, output, share, classLoader)));
+            while (true) {
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+                RecordBatch<K1, V1> batch = free.poll();
+                if (batch == null)
+                    batch = new RecordBatch<K1, V1>(batchSize);
+                if (!reader.next(batch))
+                    break;
+                put(queue, batch, futures);
+            }
+            for (int i = 0; i < numThreads; i++)
+                put(queue, end, futures);
+            for (Future<?> future : futures)
+                get(future);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Adds a batch to the queue. While the queue is full, checks whether any
+     * mapper thread has failed.
+     */
+    private static <T> void put(BlockingQueue<T> queue, T batch, List<Future<?>> futures)
+        throws IOException, InterruptedException {
+        while (!queue.offer(batch, POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+            for (Future<?> future : futures) {
+                if (future.isDone()) {
+                    get(future);
+                    // a thread only returns early if it has failed
+                    throw new IllegalStateException("mapper thread terminated");
+                }
+            }
+        }
+    }
+
+    private static void get(Future<?> future) throws IOException, InterruptedException {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            Throwable t = e.getCause();
+            if (t instanceof IOException)
+                throw (IOException)t;
+            if (t instanceof Error)
+                throw (Error)t;
+            if (t instanceof RuntimeException)
+                throw (RuntimeException)t;
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Applies one mapper instance to batches taken from the queue.
+     */
+    private class MapperThread implements Callable<Void> {
+
+        private final Mapper<K1, V1, K2, V2> mapper;
+        private final BlockingQueue<RecordBatch<K1, V1>> queue;
+        private final Queue<RecordBatch<K1, V1>> free;
+        private final BatchContext<K2, V2> output;
+        private final TaskContext task;
+        private final ClassLoader classLoader;
+
+        MapperThread(Mapper<K1, V1, K2, V2> mapper,
+                     BlockingQueue<RecordBatch<K1, V1>> queue,
+                     Queue<RecordBatch<K1, V1>> free,
+                     BatchContext<K2, V2> output,
+                     TaskContext task,
+                     ClassLoader classLoader) {
+            this.mapper = mapper;
+            this.queue = queue;
+            this.free = free;
+            this.output = output;
+            this.task = task;
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Void call() throws IOException, InterruptedException {
+            Thread.currentThread().setContextClassLoader(classLoader);
+            mapper.setup(output, task);
+            while (true) {
+                RecordBatch<K1, V1> batch = queue.take();
+                if (batch == end) {
+                    mapper.cleanup(output);
+                    return null;
+                }
+                if (mapper instanceof BatchMapper) {
+                    ((BatchMapper<K1, V1, K2, V2>)mapper).map(batch, output);
+                } else {
+                    for (int i = 0; i < batch.size(); i++)
+                        mapper.map(batch.getKey(i), batch.getValue(i), output);
+                }
+                free.add(batch);
+            }
+        }
+    }
+
+    /**
+     * Serializes writes to a context that is shared by several threads.
+     */
+    private static class SynchronizedContext<K, V> implements BatchContext<K, V> {
+
+        private final BatchContext<K, V> context;
+
+        SynchronizedContext(BatchContext<K, V> context) {
+            this.context = context;
+        }
+
+        @Override
+        public synchronized void write(K key, V value) throws IOException {
+            context.write(key, value);
+        }
+
+        @Override
+        public synchronized void write(RecordBatch<K, V> batch) throws IOException {
+            context.write(batch);
+        }
+    }
+
+}
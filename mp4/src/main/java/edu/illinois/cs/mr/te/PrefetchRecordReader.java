@@ -0,0 +1,199 @@
+package edu.illinois.cs.mr.te;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import edu.illinois.cs.mapreduce.api.RecordBatch;
+import edu.illinois.cs.mapreduce.api.RecordReader;
+
+/**
+ * Reads records ahead of the mapper. A separate thread fills batches of
+ * records from the wrapped reader into a bounded queue, so that reading and
+ * decoding the input overlaps with the map function. The thread is started by
+ * the first call to {@link #next()}. Batches are recycled once their records
+ * have been passed on, so a reader that reuses objects fills the records of
+ * a recycled batch in place.
+ * 
+ * @author benjamin
+ * @param <K> key type
+ * @param <V> value type
+ */
+class PrefetchRecordReader<K, V> extends RecordReader<K, V> {
+
+    // milliseconds between checks for a failed prefetch thread
+    private static final long POLL_INTERVAL = 100;
+
+    private final RecordReader<K, V> reader;
+    private final int batchSize;
+    private final BlockingQueue<RecordBatch<K, V>> queue;
+    // batches whose records have been passed on, for the thread to refill
+    private final Queue<RecordBatch<K, V>> free;
+    // signals the end of the input
+    private final RecordBatch<K, V> end;
+    // batches passed over whose records may still be used by the caller
+    private final List<RecordBatch<K, V>> used;
+    private ExecutorService executor;
+    private Future<?> future;
+    private RecordBatch<K, V> batch;
+    private int index;
+
+    /**
+     * @param reader reader to read ahead from
+     * @param batchSize number of records per batch
+     * @param numBatches maximum number of batches read ahead
+     */
+    PrefetchRecordReader(RecordReader<K, V> reader, int batchSize, int numBatches) {
+        this.reader = reader;
+        this.batchSize = batchSize;
+        this.queue = new ArrayBlockingQueue<RecordBatch<K, V>>(numBatches);
+        this.free = new ConcurrentLinkedQueue<RecordBatch<K, V>>();
+        this.end = new RecordBatch<K, V>(1);
+        this.used = new ArrayList<RecordBatch<K, V>>();
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        release();
+        return advance();
+    }
+
+    /**
+     * Fills the given batch from the batches read ahead. Records of a reader
+     * that reuses objects stay valid until the next call.
+     */
+    @Override
+    public boolean next(RecordBatch<K, V> records) throws IOException {
+        release();
+        records.clear();
+        while (!records.isFull() && advance())
+            records.add(batch.getKey(index), batch.getValue(index));
+        return records.size() > 0;
+    }
+
+    /**
+     * Moves to the next record, taking a new batch from the queue once the
+     * current one is used up.
+     */
+    private boolean advance() throws IOException {
+        if (future == null)
+            start();
+        index++;
+        if (batch != null && index < batch.size())
+            return true;
+        if (batch == end)
+            return false;
+        if (batch != null)
+            used.add(batch);
+        try {
+            batch = take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        index = 0;
+        return batch != end;
+    }
+
+    /**
+     * Recycles the batches kept for the records of the previous call.
+     */
+    private void release() {
+        if (!used.isEmpty()) {
+            free.addAll(used);
+            used.clear();
+        }
+    }
+
+    private void start() {
+        final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        executor = Executors.newSingleThreadExecutor();
+        future = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException, InterruptedException {
+                Thread.currentThread().setContextClassLoader(classLoader);
+                while (true) {
+                    RecordBatch<K, V> batch = free.poll();
+                    if (batch == null)
+                        batch = new RecordBatch<K, V>(batchSize);
+                    if (!reader.next(batch))
+                        break;
+                    queue.put(batch);
+                }
+                queue.put(end);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Takes the next batch from the queue. While the queue is empty, checks
+     * whether the prefetch thread has failed.
+     */
+    private RecordBatch<K, V> take() throws IOException, InterruptedException {
+        while (true) {
+            RecordBatch<K, V> next = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+            if (next != null)
+                return next;
+            if (future.isDone()) {
+                // the thread adds the end before it completes normally
+                next = queue.poll();
+                if (next != null)
+                    return next;
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable t = e.getCause();
+                    if (t instanceof IOException)
+                        throw (IOException)t;
+                    if (t instanceof Error)
+                        throw (Error)t;
+                    if (t instanceof RuntimeException)
+                        throw (RuntimeException)t;
+                    throw new RuntimeException(e);
+                }
+                throw new IllegalStateException("prefetch thread terminated");
+            }
+        }
+    }
+
+    @Override
+    public K getKey() {
+        return batch.getKey(index);
+    }
+
+    @Override
+    public V getValue() {
+        return batch.getValue(index);
+    }
+
+    @Override
+    public boolean reusesObjects() {
+        return reader.reusesObjects();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (executor != null) {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        reader.close();
+    }
+
+}
@@ -0,0 +1,127 @@
+package edu.illinois.cs.mr.te;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import edu.illinois.cs.mapreduce.api.Serialization;
+import edu.illinois.cs.mapreduce.api.lib.VarInt;
+import edu.illinois.cs.mr.util.DataInputBuffer;
+
+/**
+ * Reads a run of intermediate key/value records written by a {@link RunWriter}.
+ * The raw bytes of the current record are kept in reusable buffers; keys and
+ * values are only deserialized on request. Closing the reader closes the
+ * underlying stream.
+ * 
+ * @author benjamin
+ * @param <K> key type
+ * @param <V> value type
+ */
+class RunReader<K, V> implements Closeable {
+
+    private final DataInputStream in;
+    private final Serialization serialization;
+    private final DataInputBuffer buffer;
+
+    private byte[] key = new byte[64];
+    private byte[] value = new byte[64];
+    private int keyLength;
+    private int valueLength;
+    private K currentKey;
+    private boolean eof;
+
+    RunReader(InputStream is, Serialization serialization) {
+        this.in = new DataInputStream(is);
+        this.serialization = serialization;
+        this.buffer = new DataInputBuffer();
+    }
+
+    /**
+     * Advances to the next record.
+     * 
+     * @return false if the end of the run has been reached
+     * @throws IOException
+     */
+    boolean next() throws IOException {
+        if (eof)
+            return false;
+        keyLength = VarInt.readVInt(in);
+        if (keyLength == RunWriter.EOF) {
+            eof = true;
+            return false;
+        }
+        valueLength = VarInt.readVInt(in);
+        if (key.length < keyLength)
+            key = new byte[Math.max(keyLength, key.length * 2)];
+        if (value.length < valueLength)
+            value = new byte[Math.max(valueLength, value.length * 2)];
+        in.readFully(key, 0, keyLength);
+        in.readFully(value, 0, valueLength);
+        currentKey = null;
+        return true;
+    }
+
+    /**
+     * Returns the deserialized key of the current record. The key is
+     * deserialized once per record.
+     */
+    K getKey() throws IOException {
+        return getKey(null);
+    }
+
+    /**
+     * Returns the deserialized key of the current record, which may be read
+     * into the given object.
+     */
+    @SuppressWarnings("unchecked")
+    K getKey(K reuse) throws IOException {
+        if (currentKey == null)
+            currentKey = (K)serialization.deserialize(buffer.reset(key, 0, keyLength), reuse);
+        return currentKey;
+    }
+
+    V getValue() throws IOException {
+        return getValue(null);
+    }
+
+    /**
+     * Returns the deserialized value of the current record, which may be read
+     * into the given object.
+     */
+    @SuppressWarnings("unchecked")
+    V getValue(V reuse) throws IOException {
+        return (V)serialization.deserialize(buffer.reset(value, 0, valueLength), reuse);
+    }
+
+    /**
+     * Returns the value of the current record as a long, without
+     * deserializing it into an object.
+     */
+    long getLongValue() throws IOException {
+        return serialization.deserializeLong(value, 0, valueLength);
+    }
+
+    byte[] getKeyBytes() {
+        return key;
+    }
+
+    int getKeyLength() {
+        return keyLength;
+    }
+
+    byte[] getValueBytes() {
+        return value;
+    }
+
+    int getValueLength() {
+        return valueLength;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+}
@@ -0,0 +1,106 @@
+package edu.illinois.cs.mr.te;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.illinois.cs.mapreduce.api.CompressionCodec;
+import edu.illinois.cs.mapreduce.api.RawComparator;
+import edu.illinois.cs.mapreduce.api.Serialization;
+import edu.illinois.cs.mr.fs.FileSystem;
+import edu.illinois.cs.mr.fs.Path;
+import edu.illinois.cs.mr.util.DataOutputBuffer;
+
+/**
+ * Sorts records into runs on the local file system, for input that is too
+ * large to be grouped in memory. Records are collected in a
+ * {@link SortBuffer}, which is sorted and written to a new run whenever it is
+ * full. The runs can then be merged by a {@link Merger}.
+ * 
+ * @author benjamin
+ */
+class RunSorter {
+
+    private final FileSystem fileSystem;
+    private final Serialization serialization;
+    private final Path pathPrefix;
+    private final CompressionCodec codec;
+    private final SortBuffer buffer;
+    private final DataOutputBuffer keyBuffer;
+    private final DataOutputBuffer valueBuffer;
+    private final List<Path> runs;
+
+    /**
+     * @param fileSystem local file system for the runs
+     * @param serialization job serialization
+     * @param comparator raw comparator used to sort keys
+     * @param bufferSize capacity of the sort buffer in bytes
+     * @param pathPrefix path prefix for the runs
+     * @param codec codec for the runs, or null
+     */
+    RunSorter(FileSystem fileSystem,
+              Serialization serialization,
+              RawComparator<Object> comparator,
+              int bufferSize,
+              Path pathPrefix,
+              CompressionCodec codec) {
+        this.fileSystem = fileSystem;
+        this.serialization = serialization;
+        this.pathPrefix = pathPrefix;
+        this.codec = codec;
+        this.buffer = new SortBuffer(bufferSize, comparator);
+        this.keyBuffer = new DataOutputBuffer();
+        this.valueBuffer = new DataOutputBuffer();
+        this.runs = new ArrayList<Path>();
+    }
+
+    void add(Object key, Object value) throws IOException {
+        serialization.serialize(key, keyBuffer.reset());
+        serialization.serialize(value, valueBuffer.reset());
+        add(keyBuffer.getData(), keyBuffer.getLength(), valueBuffer.getData(), valueBuffer.getLength());
+    }
+
+    void add(byte[] key, int keyLength, byte[] value, int valueLength) throws IOException {
+        if (!buffer.add(0, key, keyLength, value, valueLength)) {
+            writeRun();
+            buffer.add(0, key, keyLength, value, valueLength);
+        }
+    }
+
+    /**
+     * Writes the buffered records to a last run and returns the paths of all
+     * runs.
+     */
+    List<Path> finish() throws IOException {
+        if (!buffer.isEmpty())
+            writeRun();
+        return runs;
+    }
+
+    private void writeRun() throws IOException {
+        buffer.sort();
+        Path path = pathPrefix.beforeLast().append(pathPrefix.last() + "-run" + runs.size());
+        runs.add(path);
+        OutputStream os = Compression.compress(codec, fileSystem.write(path));
+        RunWriter<Object, Object> writer = new RunWriter<Object, Object>(os, serialization);
+        try {
+            byte[] data = buffer.getData();
+            for (int i = 0; i < buffer.size(); i++)
+                writer.append(data, buffer.getKeyOffset(i), buffer.getKeyLength(i), data,
+                              buffer.getValueOffset(i), buffer.getValueLength(i));
+        } finally {
+            writer.close();
+        }
+        buffer.reset();
+    }
+
+    /**
+     * Deletes all runs written so far.
+     */
+    void delete() throws IOException {
+        for (Path run : runs)
+            fileSystem.delete(run);
+    }
+
+}
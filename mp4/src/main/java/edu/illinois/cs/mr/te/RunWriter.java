@@ -0,0 +1,63 @@
+package edu.illinois.cs.mr.te;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import edu.illinois.cs.mapreduce.api.Serialization;
+import edu.illinois.cs.mapreduce.api.lib.VarInt;
+import edu.illinois.cs.mr.util.DataOutputBuffer;
+
+/**
+ * Writes a run of intermediate key/value records. Each record is framed as
+ * <code>keyLength valueLength key value</code> with variable length integers
+ * for the lengths, and the run is terminated by a key length of -1. The framing
+ * lets readers move records around without deserializing them. Closing the
+ * writer closes the underlying stream.
+ * 
+ * @author benjamin
+ * @param <K> key type
+ * @param <V> value type
+ */
+class RunWriter<K, V> implements Closeable {
+
+    static final int EOF = -1;
+
+    private final DataOutputStream out;
+    private final Serialization serialization;
+    private final DataOutputBuffer keyBuffer;
+    private final DataOutputBuffer valueBuffer;
+
+    RunWriter(OutputStream os, Serialization serialization) {
+        this.out = new DataOutputStream(os);
+        this.serialization = serialization;
+        this.keyBuffer = new DataOutputBuffer();
+        this.valueBuffer = new DataOutputBuffer();
+    }
+
+    void append(K key, V value) throws IOException {
+        serialization.serialize(key, keyBuffer.reset());
+        serialization.serialize(value, valueBuffer.reset());
+        append(keyBuffer.getData(), 0, keyBuffer.getLength(), valueBuffer.getData(), 0, valueBuffer.getLength());
+    }
+
+    void append(byte[] key, int keyOffset, int keyLength, byte[] value, int valueOffset, int valueLength)
+        throws IOException {
+        VarInt.writeVInt(out, keyLength);
+        VarInt.writeVInt(out, valueLength);
+        out.write(key, keyOffset, keyLength);
+        out.write(value, valueOffset, valueLength);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            VarInt.writeVInt(out, EOF);
+            out.flush();
+        } finally {
+            out.close();
+        }
+    }
+
+}
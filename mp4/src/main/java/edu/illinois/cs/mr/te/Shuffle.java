@@ -0,0 +1,173 @@
+package edu.illinois.cs.mr.te;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import edu.illinois.cs.mr.Node;
+import edu.illinois.cs.mr.fs.FileSystem;
+import edu.illinois.cs.mr.fs.FileSystemService;
+import edu.illinois.cs.mr.fs.Path;
+import edu.illinois.cs.mr.fs.QualifiedPath;
+import edu.illinois.cs.mr.jm.JobID;
+import edu.illinois.cs.mr.jm.JobManagerService;
+
+/**
+ * Copies one partition of all map outputs of a job to the local file system.
+ * The job manager is polled for map tasks that have succeeded, and their
+ * outputs are fetched by a pool of threads right away, so that fetching
+ * overlaps with the map tasks that are still running. While the shuffle waits
+ * for map tasks, the task executor may run another task in its place, so that
+ * a reduce task cannot starve the map tasks of its node.
+ * 
+ * @author benjamin
+ */
+class Shuffle {
+
+    private final Node node;
+    private final TaskExecutor taskExecutor;
+    private final JobID jobID;
+    private final int partition;
+    private final Path stagingPath;
+    private final int numFetchers;
+    private final long pollInterval;
+
+    /**
+     * @param node local node
+     * @param taskExecutor task executor running the reduce task
+     * @param jobID job whose map outputs are fetched
+     * @param partition partition to fetch
+     * @param stagingPath path prefix for the local copies
+     * @param numFetchers number of concurrent fetches
+     * @param pollInterval milliseconds between polls of the job manager
+     */
+    Shuffle(Node node,
+            TaskExecutor taskExecutor,
+            JobID jobID,
+            int partition,
+            Path stagingPath,
+            int numFetchers,
+            long pollInterval) {
+        this.node = node;
+        this.taskExecutor = taskExecutor;
+        this.jobID = jobID;
+        this.partition = partition;
+        this.stagingPath = stagingPath;
+        this.numFetchers = numFetchers;
+        this.pollInterval = pollInterval;
+    }
+
+    /**
+     * Fetches all map outputs and returns the paths of the local copies in map
+     * task order. The caller is responsible for deleting the copies. If the
+     * shuffle fails, the copies made so far are deleted.
+     * 
+     * @return
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    List<Path> run() throws IOException, InterruptedException {
+        FileSystem fileSystem = node.getFileSystem();
+        JobManagerService jobManager = node.getJobManagerService(jobID.getParentID());
+        ExecutorService fetchers = Executors.newFixedThreadPool(numFetchers);
+        List<Path> paths = new ArrayList<Path>();
+        List<Future<?>> pending = new ArrayList<Future<?>>();
+        boolean succeeded = false, waiting = false;
+        try {
+            while (true) {
+                QualifiedPath[] outputs = jobManager.getMapOutputs(jobID, partition);
+                if (outputs == null)
+                    throw new IOException("Job " + jobID + " is no longer running");
+                while (paths.size() < outputs.length)
+                    paths.add(null);
+                boolean complete = true;
+                for (int i = 0; i < outputs.length; i++) {
+                    if (outputs[i] == null) {
+                        complete = false;
+                    } else if (paths.get(i) == null) {
+                        Path path = stagingPath.beforeLast().append(stagingPath.last() + "-" + i);
+                        paths.set(i, path);
+                        pending.add(fetchers.submit(new Fetch(fileSystem, outputs[i], path)));
+                    }
+                }
+                for (Iterator<Future<?>> it = pending.iterator(); it.hasNext();) {
+                    Future<?> future = it.next();
+                    if (complete || future.isDone()) {
+                        get(future);
+                        it.remove();
+                    }
+                }
+                if (complete) {
+                    succeeded = true;
+                    return paths;
+                }
+                if (!waiting) {
+                    taskExecutor.beginWait();
+                    waiting = true;
+                }
+                Thread.sleep(pollInterval);
+            }
+        } finally {
+            if (waiting)
+                taskExecutor.endWait();
+            fetchers.shutdownNow();
+            if (!succeeded) {
+                fetchers.awaitTermination(pollInterval, TimeUnit.MILLISECONDS);
+                for (Path path : paths)
+                    if (path != null)
+                        fileSystem.delete(path);
+            }
+        }
+    }
+
+    private static void get(Future<?> future) throws IOException, InterruptedException {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            Throwable t = e.getCause();
+            if (t instanceof IOException)
+                throw (IOException)t;
+            if (t instanceof Error)
+                throw (Error)t;
+            if (t instanceof RuntimeException)
+                throw (RuntimeException)t;
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Copies a single map output to the local file system.
+     */
+    private class Fetch implements Callable<Void> {
+
+        private final FileSystem fileSystem;
+        private final QualifiedPath source;
+        private final Path target;
+
+        Fetch(FileSystem fileSystem, QualifiedPath source, Path target) {
+            this.fileSystem = fileSystem;
+            this.source = source;
+            this.target = target;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            FileSystemService fs = node.getFileSystemService(source.getNodeId());
+            InputStream is = fs.read(source.getPath());
+            try {
+                fileSystem.write(target, is);
+            } finally {
+                is.close();
+            }
+            return null;
+        }
+    }
+}
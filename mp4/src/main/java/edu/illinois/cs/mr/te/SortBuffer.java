@@ -0,0 +1,397 @@
+package edu.illinois.cs.mr.te;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import edu.illinois.cs.mapreduce.api.NormalizedKeyComparator;
+import edu.illinois.cs.mapreduce.api.RawComparator;
+
+/**
+ * Buffers serialized map output records in a single byte array and sorts them
+ * by partition and key. Record metadata is kept in a parallel int array
+ * (partition, key offset, key length, value length per record), and sorting
+ * permutes an int array of record numbers, so neither buffering nor sorting
+ * allocates objects per record. The arrays grow on demand until the buffer
+ * reaches its byte capacity, which accounts for both record bytes and
+ * metadata.
+ * <p>
+ * Records are first distributed to their partitions by a counting sort. Each
+ * partition is then sorted by quicksort. If the comparator is a
+ * {@link NormalizedKeyComparator}, every record number in the sort index is
+ * accompanied by the normalized prefix of its key, and keys are only compared
+ * in serialized form if their prefixes are equal.
+ * <p>
+ * Large buffers can be sorted by several threads. Each partition is split into
+ * runs that are sorted in parallel, and adjacent runs are then merged
+ * pairwise, also in parallel, until each partition is a single run. Merging
+ * uses scratch arrays of 12 bytes per record in addition to the buffer's
+ * capacity.
+ * 
+ * @author benjamin
+ */
+class SortBuffer {
+
+    // ints of metadata per record
+    private static final int META = 4;
+    private static final int PARTITION = 0;
+    private static final int KEY_OFFSET = 1;
+    private static final int KEY_LENGTH = 2;
+    private static final int VALUE_LENGTH = 3;
+    // bytes of metadata, sort index and key prefix per record
+    private static final int RECORD_OVERHEAD = (META + 1) * 4 + 8;
+    // ranges at most this long are sorted by insertion sort
+    private static final int INSERTION_SORT_THRESHOLD = 7;
+    // runs sorted by a single thread are at least this long
+    private static final int MIN_PARALLEL_RUN = 16 * 1024;
+
+    private final int capacity;
+    private final RawComparator<Object> comparator;
+    private final NormalizedKeyComparator<Object> normalizer;
+    private byte[] data;
+    private int[] meta;
+    private int[] order;
+    private long[] prefix;
+    private int[] scratchOrder;
+    private long[] scratchPrefix;
+    private int length;
+    private int records;
+    private int maxPartition;
+    private int[] starts;
+
+    /**
+     * @param capacity maximum number of bytes used by records and metadata
+     * @param comparator raw comparator used to sort keys
+     */
+    @SuppressWarnings("unchecked")
+    SortBuffer(int capacity, RawComparator<Object> comparator) {
+        this.capacity = capacity;
+        this.comparator = comparator;
+        if (comparator instanceof NormalizedKeyComparator)
+            this.normalizer = (NormalizedKeyComparator<Object>)comparator;
+        else
+            this.normalizer = null;
+        this.data = new byte[Math.min(capacity, 64 * 1024)];
+        this.meta = new int[256 * META];
+        this.order = new int[256];
+        this.prefix = new long[256];
+    }
+
+    /**
+     * Appends a record. A record that does not fit is only accepted if the
+     * buffer is empty, in which case the buffer grows beyond its capacity.
+     * 
+     * @return false if the buffer is full
+     */
+    boolean add(int partition, byte[] key, int keyLength, byte[] value, int valueLength) {
+        int size = keyLength + valueLength;
+        if (records > 0 && length + size + (records + 1) * RECORD_OVERHEAD > capacity)
+            return false;
+        if (length + size > data.length)
+            data = Arrays.copyOf(data, grow(data.length, length + size));
+        if ((records + 1) * META > meta.length) {
+            meta = Arrays.copyOf(meta, grow(meta.length, (records + 1) * META));
+            order = Arrays.copyOf(order, meta.length / META);
+            prefix = Arrays.copyOf(prefix, order.length);
+        }
+        int m = records * META;
+        meta[m + PARTITION] = partition;
+        meta[m + KEY_OFFSET] = length;
+        meta[m + KEY_LENGTH] = keyLength;
+        meta[m + VALUE_LENGTH] = valueLength;
+        System.arraycopy(key, 0, data, length, keyLength);
+        System.arraycopy(value, 0, data, length + keyLength, valueLength);
+        maxPartition = Math.max(maxPartition, partition);
+        length += size;
+        records++;
+        return true;
+    }
+
+    private int grow(int current, int required) {
+        long size = Math.max((long)current * 2, required);
+        return (int)Math.max(required, Math.min(size, capacity));
+    }
+
+    boolean isEmpty() {
+        return records == 0;
+    }
+
+    /**
+     * Returns the number of records in the buffer.
+     */
+    int size() {
+        return records;
+    }
+
+    /**
+     * Discards all records, but keeps the allocated arrays.
+     */
+    void reset() {
+        length = 0;
+        records = 0;
+        maxPartition = 0;
+    }
+
+    /**
+     * Returns the number of threads that can usefully sort this buffer.
+     */
+    int getMaxParallelism() {
+        return Math.max(1, records / MIN_PARALLEL_RUN);
+    }
+
+    /**
+     * Sorts the records by partition and key. After sorting, the accessors
+     * return records in sorted order.
+     */
+    void sort() {
+        distribute();
+        for (int p = 0; p <= maxPartition; p++)
+            quickSort(getPartitionStart(p), getPartitionStart(p + 1));
+    }
+
+    /**
+     * Sorts the records by partition and key using the calling thread and up
+     * to the given number of additional threads of the executor.
+     * 
+     * @throws InterruptedIOException if interrupted while waiting for the
+     *             other threads
+     */
+    void sort(ExecutorService executor, int threads) throws IOException {
+        if (threads < 1 || records < 2 * MIN_PARALLEL_RUN) {
+            sort();
+            return;
+        }
+        distribute();
+        int runLength = Math.max(MIN_PARALLEL_RUN, (records + threads) / (threads + 1) + 1);
+        // boundaries of the sorted runs of each partition
+        List<List<Integer>> runs = new ArrayList<List<Integer>>(maxPartition + 1);
+        List<Runnable> tasks = new ArrayList<Runnable>();
+        for (int p = 0; p <= maxPartition; p++) {
+            int start = getPartitionStart(p), end = getPartitionStart(p + 1);
+            List<Integer> bounds = new ArrayList<Integer>();
+            bounds.add(start);
+            for (int from = start; from < end; from += runLength) {
+                final int f = from, t = Math.min(end, from + runLength);
+                bounds.add(t);
+                tasks.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        quickSort(f, t);
+                    }
+                });
+            }
+            runs.add(bounds);
+        }
+        invoke(executor, tasks);
+        if (scratchOrder == null || scratchOrder.length < order.length) {
+            scratchOrder = new int[order.length];
+            scratchPrefix = new long[order.length];
+        }
+        boolean merged = false;
+        while (!merged) {
+            merged = true;
+            tasks.clear();
+            for (List<Integer> bounds : runs) {
+                List<Integer> next = new ArrayList<Integer>();
+                next.add(bounds.get(0));
+                for (int i = 0; i + 1 < bounds.size(); i += 2) {
+                    final int from = bounds.get(i), mid = bounds.get(i + 1);
+                    final int to = i + 2 < bounds.size() ? bounds.get(i + 2) : mid;
+                    next.add(to);
+                    tasks.add(new Runnable() {
+                        @Override
+                        public void run() {
+                            merge(from, mid, to);
+                        }
+                    });
+                }
+                merged &= next.size() <= 2;
+                bounds.clear();
+                bounds.addAll(next);
+            }
+            invoke(executor, tasks);
+            int[] o = order;
+            order = scratchOrder;
+            scratchOrder = o;
+            long[] pr = prefix;
+            prefix = scratchPrefix;
+            scratchPrefix = pr;
+        }
+    }
+
+    /**
+     * Runs the first task on the calling thread and the others on the
+     * executor, and waits for all of them.
+     */
+    private static void invoke(ExecutorService executor, List<Runnable> tasks) throws IOException {
+        List<Future<?>> futures = new ArrayList<Future<?>>(tasks.size());
+        try {
+            for (int i = 1; i < tasks.size(); i++)
+                futures.add(executor.submit(tasks.get(i)));
+            if (!tasks.isEmpty())
+                tasks.get(0).run();
+            for (Future<?> future : futures)
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable t = e.getCause();
+            if (t instanceof Error)
+                throw (Error)t;
+            if (t instanceof RuntimeException)
+                throw (RuntimeException)t;
+            throw new RuntimeException(e);
+        } finally {
+            for (Future<?> future : futures)
+                future.cancel(true);
+        }
+    }
+
+    /**
+     * Merges the sorted ranges [from, mid) and [mid, to) of the sort index
+     * into the same range of the scratch arrays.
+     */
+    private void merge(int from, int mid, int to) {
+        int i = from, j = mid;
+        for (int k = from; k < to; k++) {
+            if (j >= to || (i < mid && compare(i, j) <= 0)) {
+                scratchOrder[k] = order[i];
+                scratchPrefix[k] = prefix[i++];
+            } else {
+                scratchOrder[k] = order[j];
+                scratchPrefix[k] = prefix[j++];
+            }
+        }
+    }
+
+    /**
+     * Distributes the records to their partitions by a counting sort and
+     * computes the key prefixes.
+     */
+    private void distribute() {
+        // counting sort by partition
+        int[] ends = new int[maxPartition + 1];
+        for (int r = 0; r < records; r++)
+            ends[meta[r * META + PARTITION]]++;
+        for (int p = 1; p <= maxPartition; p++)
+            ends[p] += ends[p - 1];
+        for (int r = records - 1; r >= 0; r--)
+            order[--ends[meta[r * META + PARTITION]]] = r;
+        // ends now holds the start of each partition
+        starts = ends;
+        for (int i = 0; i < records; i++) {
+            int m = order[i] * META;
+            prefix[i] = normalizer == null ? 0 : normalizer.getPrefix(data, meta[m + KEY_OFFSET], meta[m + KEY_LENGTH]);
+        }
+    }
+
+    private int getPartitionStart(int partition) {
+        return partition <= maxPartition ? starts[partition] : records;
+    }
+
+    private void quickSort(int from, int to) {
+        while (to - from > INSERTION_SORT_THRESHOLD) {
+            int mid = (from + to) >>> 1;
+            // median of three as pivot, moved to the front
+            if (compare(mid, from) < 0)
+                swap(mid, from);
+            if (compare(to - 1, from) < 0)
+                swap(to - 1, from);
+            if (compare(to - 1, mid) < 0)
+                swap(to - 1, mid);
+            swap(from, mid);
+            long pivotPrefix = prefix[from];
+            int pivot = order[from];
+            // three way partitioning: [from, lt) < pivot, [lt, gt) == pivot
+            int lt = from, i = from + 1, gt = to;
+            while (i < gt) {
+                int c = compare(prefix[i], order[i], pivotPrefix, pivot);
+                if (c < 0)
+                    swap(lt++, i++);
+                else if (c > 0)
+                    swap(i, --gt);
+                else
+                    i++;
+            }
+            // recurse into the smaller part to bound the stack depth
+            if (lt - from < to - gt) {
+                quickSort(from, lt);
+                from = gt;
+            } else {
+                quickSort(gt, to);
+                to = lt;
+            }
+        }
+        for (int i = from + 1; i < to; i++)
+            for (int j = i; j > from && compare(j, j - 1) < 0; j--)
+                swap(j, j - 1);
+    }
+
+    private void swap(int i, int j) {
+        int tmp = order[i];
+        order[i] = order[j];
+        order[j] = tmp;
+        long p = prefix[i];
+        prefix[i] = prefix[j];
+        prefix[j] = p;
+    }
+
+    /**
+     * Compares the keys at the given positions of the sort index.
+     */
+    private int compare(int i, int j) {
+        return compare(prefix[i], order[i], prefix[j], order[j]);
+    }
+
+    /**
+     * Compares the keys of two records by their prefixes, and then by their
+     * serialized form if the prefixes are equal.
+     */
+    private int compare(long p1, int r1, long p2, int r2) {
+        if (p1 != p2)
+            return (p1 ^ Long.MIN_VALUE) < (p2 ^ Long.MIN_VALUE) ? -1 : 1;
+        int m1 = r1 * META, m2 = r2 * META;
+        return comparator.compare(data, meta[m1 + KEY_OFFSET], meta[m1 + KEY_LENGTH], data,
+                                  meta[m2 + KEY_OFFSET], meta[m2 + KEY_LENGTH]);
+    }
+
+    /**
+     * Returns true if the records at the given positions have the same
+     * partition and key.
+     */
+    boolean equals(int i, int j) {
+        return getPartition(i) == getPartition(j) && compare(i, j) == 0;
+    }
+
+    byte[] getData() {
+        return data;
+    }
+
+    int getPartition(int i) {
+        return meta[order[i] * META + PARTITION];
+    }
+
+    int getKeyOffset(int i) {
+        return meta[order[i] * META + KEY_OFFSET];
+    }
+
+    int getKeyLength(int i) {
+        return meta[order[i] * META + KEY_LENGTH];
+    }
+
+    int getValueOffset(int i) {
+        int m = order[i] * META;
+        return meta[m + KEY_OFFSET] + meta[m + KEY_LENGTH];
+    }
+
+    int getValueLength(int i) {
+        return meta[order[i] * META + VALUE_LENGTH];
+    }
+
+}
@@ -8,6 +8,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.Semaphore;
@@ -55,6 +56,8 @@ public class TaskExecutor implements TaskExecutorService, NodeListener {
     private final NodeConfiguration config;
     private Node node; // quasi immutable
     private final ThreadPoolExecutor executorService;
+    private final ExecutorService sortExecutorService;
+    private final Semaphore sortThreads;
 
     // mutable state
     private final Map<AttemptID, TaskExecution> executions;
@@ -67,6 +70,8 @@ public class TaskExecutor implements TaskExecutorService, NodeListener {
         this.config = config;
         this.throttle = config.teThrottle;
         this.executorService = (ThreadPoolExecutor)Executors.newFixedThreadPool(config.teNumThreads);
+        this.sortExecutorService = Executors.newFixedThreadPool(Math.max(1, config.teSortThreads));
+        this.sortThreads = new Semaphore(config.teSortThreads);
         this.executions = new TreeMap<AttemptID, TaskExecution>();
         this.index = 0;
         this.taskRuntimes = new long[10];
@@ -85,6 +90,7 @@ public class TaskExecutor implements TaskExecutorService, NodeListener {
     @Override
     public void stop() {
         this.executorService.shutdown();
+        this.sortExecutorService.shutdown();
     }
 
     @Override
@@ -108,6 +114,57 @@ public class TaskExecutor implements TaskExecutorService, NodeListener {
         return executorService.getQueue().size();
     }
 
+    /**
+     * Reserves up to the given number of sort threads without blocking. The
+     * reserved threads must be released after sorting.
+     * 
+     * @param max maximum number of threads wanted
+     * @return number of threads reserved, possibly zero
+     */
+    int acquireSortThreads(int max) {
+        int n = Math.min(max, sortThreads.availablePermits());
+        while (n > 0 && !sortThreads.tryAcquire(n))
+            n--;
+        return n;
+    }
+
+    void releaseSortThreads(int n) {
+        if (n > 0)
+            sortThreads.release(n);
+    }
+
+    /**
+     * Adds a thread to the pool while the calling task waits for other tasks,
+     * as a reduce task waits for map outputs, so that the tasks it waits for
+     * can run even if it holds the last thread. Each call must be followed by
+     * {@link #endWait()} once the task stops waiting, which removes the
+     * thread again as soon as it is idle.
+     */
+    synchronized void beginWait() {
+        // the maximum size must never be below the core size
+        executorService.setMaximumPoolSize(executorService.getMaximumPoolSize() + 1);
+        executorService.setCorePoolSize(executorService.getCorePoolSize() + 1);
+    }
+
+    synchronized void endWait() {
+        executorService.setCorePoolSize(executorService.getCorePoolSize() - 1);
+        executorService.setMaximumPoolSize(executorService.getMaximumPoolSize() - 1);
+    }
+
+    /**
+     * Returns the executor that runs the tasks.
+     */
+    ThreadPoolExecutor getExecutorService() {
+        return executorService;
+    }
+
+    /**
+     * Returns the executor that runs the sort threads.
+     */
+    ExecutorService getSortExecutorService() {
+        return sortExecutorService;
+    }
+
     /**
      * Callback for the TaskRunner to indicate that the given task has
      * completed.
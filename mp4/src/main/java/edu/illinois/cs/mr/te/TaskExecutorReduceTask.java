@@ -1,10 +1,7 @@
 package edu.illinois.cs.mr.te;
 
-import java.util.List;
-
 import edu.illinois.cs.mr.NodeID;
 import edu.illinois.cs.mr.fs.Path;
-import edu.illinois.cs.mr.fs.QualifiedPath;
 import edu.illinois.cs.mr.jm.JobDescriptor;
 import edu.illinois.cs.mr.jm.AttemptID;
 
@@ -12,16 +9,16 @@ public class TaskExecutorReduceTask extends TaskExecutorTask {
 
     private static final long serialVersionUID = -5842321755763808777L;
 
-    private final List<QualifiedPath> inputPaths;
+    private final int partition;
 
     public TaskExecutorReduceTask(AttemptID id,
                                   Path jarPath,
                                   JobDescriptor descriptor,
                                   Path outputPath,
                                   NodeID targetNodeID,
-                                  List<QualifiedPath> inputPaths) {
+                                  int partition) {
         super(id, jarPath, descriptor, outputPath, targetNodeID);
-        this.inputPaths = inputPaths;
+        this.partition = partition;
     }
 
     @Override
@@ -29,8 +26,11 @@ public class TaskExecutorReduceTask extends TaskExecutorTask {
         return false;
     }
 
-    public List<QualifiedPath> getInputPaths() {
-        return inputPaths;
+    /**
+     * Returns the partition of the map outputs processed by this task
+     */
+    public int getPartition() {
+        return partition;
     }
 
 }
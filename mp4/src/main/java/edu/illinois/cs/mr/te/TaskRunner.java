@@ -1,35 +1,37 @@
 package edu.illinois.cs.mr.te;
 
-import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Map.Entry;
-import java.util.TreeMap;
+import java.util.Properties;
 import java.util.concurrent.Semaphore;
 
+import edu.illinois.cs.mapreduce.api.BatchMapper;
+import edu.illinois.cs.mapreduce.api.CompressionCodec;
 import edu.illinois.cs.mapreduce.api.Context;
 import edu.illinois.cs.mapreduce.api.InputFormat;
+import edu.illinois.cs.mapreduce.api.LongReducer;
 import edu.illinois.cs.mapreduce.api.Mapper;
 import edu.illinois.cs.mapreduce.api.OutputFormat;
+import edu.illinois.cs.mapreduce.api.Partitioner;
+import edu.illinois.cs.mapreduce.api.RawComparator;
+import edu.illinois.cs.mapreduce.api.RecordBatch;
 import edu.illinois.cs.mapreduce.api.RecordReader;
 import edu.illinois.cs.mapreduce.api.RecordWriter;
 import edu.illinois.cs.mapreduce.api.Reducer;
+import edu.illinois.cs.mapreduce.api.Serialization;
 import edu.illinois.cs.mapreduce.api.Split;
+import edu.illinois.cs.mapreduce.api.TaskContext;
 import edu.illinois.cs.mr.Node;
 import edu.illinois.cs.mr.fs.FileSystem;
-import edu.illinois.cs.mr.fs.FileSystemService;
 import edu.illinois.cs.mr.fs.Path;
-import edu.illinois.cs.mr.fs.QualifiedPath;
 import edu.illinois.cs.mr.jm.JobDescriptor;
+import edu.illinois.cs.mr.jm.JobID;
 import edu.illinois.cs.mr.util.ReflectionUtil;
 import edu.illinois.cs.mr.util.Status.State;
 
@@ -40,7 +42,85 @@ import edu.illinois.cs.mr.util.Status.State;
  */
 class TaskRunner implements Runnable {
 
-    private static final int OBJECT_CHUNKS = 1000;
+    // records a map task of an unordered job groups in its hash table before it
+    // compacts or spills them
+    private static final String MBR = "map.output.buffer.records";
+    private static final String MBR_DEFAULT = "100000";
+    // bytes of serialized records a map task buffers and sorts before it spills
+    // them; also the sort buffer of unordered reduce tasks that fall back to
+    // sorting
+    private static final String MBS = "map.output.buffer.size";
+    private static final String MBS_DEFAULT = "16777216";
+    // maximum number of sorted runs merged at once, more runs are merged in
+    // several passes
+    private static final String MF = "merge.factor";
+    private static final String MF_DEFAULT = "10";
+    // whether reduce tasks feed the final merge of the map outputs straight
+    // into the reducer instead of merging them into a local file first
+    private static final String RS = "reduce.streaming";
+    private static final String RS_DEFAULT = "true";
+    // whether reducers can iterate over the values of a key more than once
+    private static final String RVM = "reduce.values.markable";
+    private static final String RVM_DEFAULT = "false";
+    // bytes of the values of a key kept in memory for repeated iteration, the
+    // rest is written to a local file
+    private static final String RVB = "reduce.values.buffer.size";
+    private static final String RVB_DEFAULT = "1048576";
+    // number of map outputs a reduce task fetches at once
+    private static final String RSC = "reduce.shuffle.parallel.copies";
+    private static final String RSC_DEFAULT = "5";
+    // milliseconds between polls of the job manager for map tasks that have
+    // succeeded
+    private static final String RSP = "reduce.shuffle.poll.interval";
+    private static final String RSP_DEFAULT = "500";
+    // whether the combiner is applied to each spill
+    private static final String COS = "combiner.on.spill";
+    private static final String COS_DEFAULT = "true";
+    // whether the combiner is applied to the merge of spills
+    private static final String COM = "combiner.on.merge";
+    private static final String COM_DEFAULT = "true";
+    // whether the combiner is applied to the merge passes of reduce tasks
+    private static final String CORM = "combiner.on.reduce.merge";
+    private static final String CORM_DEFAULT = "false";
+    // the combiner is turned off for the rest of a task once it eliminates less
+    // than this fraction of records
+    private static final String CMR = "combiner.min.reduction";
+    private static final String CMR_DEFAULT = "0.1";
+    // records grouped in the hash table of an unordered reduce task before it
+    // falls back to sorting
+    private static final String RAB = "reduce.aggregation.buffer.records";
+    private static final String RAB_DEFAULT = "100000";
+    // number of mapper instances that map batches of records in parallel, each
+    // on its own thread, for CPU-bound mappers
+    private static final String MRT = "map.runner.threads";
+    private static final String MRT_DEFAULT = "1";
+    // records per batch handed to a mapper thread
+    private static final String MRB = "map.runner.batch.size";
+    private static final String MRB_DEFAULT = "100";
+    // maximum number of batches of records read ahead of a single mapper thread
+    // on a separate thread, 0 reads on the mapper thread
+    private static final String MIP = "map.input.prefetch.batches";
+    private static final String MIP_DEFAULT = "0";
+    // records per batch read ahead
+    private static final String MIPB = "map.input.prefetch.batch.size";
+    private static final String MIPB_DEFAULT = "100";
+    // CompressionCodec class that compresses map output files, such as LZCodec
+    // or DeflateCodec; map output is not compressed if it is not set
+    private static final String MOC = "map.output.compression.codec";
+    // whether spills and merge passes are compressed as well
+    private static final String MOCS = "map.output.compress.spills";
+    private static final String MOCS_DEFAULT = "false";
+    // jobs whose combiners and reducers do not keep the keys and values they are
+    // given beyond the call can let the serialization read all keys and all
+    // values into one instance each
+    private static final String JOR = "job.object.reuse";
+    private static final String JOR_DEFAULT = "false";
+    // records per batch given to a BatchMapper on a single mapper thread
+    private static final String MBA = "map.batch.size";
+    private static final String MBA_DEFAULT = "1000";
+    // bytes of heap that a mapper or reducer may fill with state it keeps across
+    // calls, see newTaskContext() for the default
+    private static final String TMB = "task.memory.budget";
 
     private final TaskExecutorTask task;
     private final Node node;
@@ -50,6 +130,10 @@ class TaskRunner implements Runnable {
     private FileSystem fileSystem;
     private ClassLoader classLoader;
     private JobDescriptor descriptor;
+    private Serialization serialization;
+    private RawComparator<Object> comparator;
+    private CompressionCodec outputCodec;
+    private CompressionCodec spillCodec;
 
     public TaskRunner(TaskExecutor parent, TaskExecutorTask task, Semaphore completion, Node node) {
         this.parent = parent;
@@ -64,14 +148,30 @@ class TaskRunner implements Runnable {
         URL jarURL = fileSystem.toURL(jarPath);
         this.classLoader = ReflectionUtil.createClassLoader(jarURL);
         this.descriptor = task.getDescriptor();
+        this.serialization = newInstance(descriptor.getSerializationClass());
+        String comparatorClass = descriptor.getComparatorClass();
+        if (comparatorClass == null)
+            this.comparator = serialization.getRawComparator();
+        else
+            this.comparator = newInstance(comparatorClass);
+        Properties properties = descriptor.getProperties();
+        String codecClass = properties.getProperty(MOC);
+        if (codecClass != null && codecClass.length() > 0) {
+            this.outputCodec = newInstance(codecClass);
+            if (Boolean.parseBoolean(properties.getProperty(MOCS, MOCS_DEFAULT)))
+                this.spillCodec = outputCodec;
+        }
     }
 
     @Override
     public void run() {
+        Thread thread = Thread.currentThread();
+        ClassLoader contextClassLoader = thread.getContextClassLoader();
         try {
             task.setState(State.RUNNING);
             long before = System.currentTimeMillis();
             init();
+            thread.setContextClassLoader(classLoader);
             if (task.isMap())
                 runMap((TaskExecutorMapTask)task);
             else
@@ -86,6 +186,7 @@ class TaskRunner implements Runnable {
             if (t instanceof Error)
                 throw (Error)t;
         } finally {
+            thread.setContextClassLoader(contextClassLoader);
             completion.release();
             try {
                 Thread.sleep(this.parent.done(task));
@@ -100,31 +201,76 @@ class TaskRunner implements Runnable {
         Mapper<K1, V1, K2, V2> mapper = newInstance(descriptor.getMapperClass());
         InputFormat<K1, V1, ? super Split> inputFormat = newInstance(descriptor.getInputFormatClass());
         Split split = mapTask.getSplit();
-        Reducer<K2, V2, K2, V2> combiner = null;
-        String combinerClass = descriptor.getCombinerClass();
-        if (combinerClass != null)
-            combiner = newInstance(combinerClass);
+        Properties properties = descriptor.getProperties();
+        Combiner<K2, V2> combiner = newCombiner();
+        Combiner<K2, V2> spillCombiner = null, mergeCombiner = null;
+        if (Boolean.parseBoolean(properties.getProperty(COS, COS_DEFAULT)))
+            spillCombiner = combiner;
+        if (Boolean.parseBoolean(properties.getProperty(COM, COM_DEFAULT)))
+            mergeCombiner = combiner;
+        Partitioner<K2, V2> partitioner = newInstance(descriptor.getPartitionerClass());
+        Merger merger = newMerger(mapTask.getOutputPath(), mergeCombiner);
         // run map
-        InputStream is = fileSystem.read(mapTask.getInputPath());
+        InputStream is = fileSystem.open(mapTask.getInputPath());
         try {
             RecordReader<K1, V1> reader = inputFormat.createRecordReader(split, is);
+            int numThreads = Integer.parseInt(properties.getProperty(MRT, MRT_DEFAULT));
+            int prefetchBatches = Integer.parseInt(properties.getProperty(MIP, MIP_DEFAULT));
+            // the multithreaded runner reads ahead of its mappers by itself
+            if (prefetchBatches > 0 && numThreads <= 1) {
+                int prefetchBatchSize = Integer.parseInt(properties.getProperty(MIPB, MIPB_DEFAULT));
+                reader = new PrefetchRecordReader<K1, V1>(reader, prefetchBatchSize, prefetchBatches);
+            }
             try {
-                OutputStream os = fileSystem.write(mapTask.getOutputPath());
+                int numPartitions = descriptor.getNumReduceTasks();
+                MapOutput<K2, V2> context;
+                if (descriptor.isUnordered()) {
+                    int bufferLimit = Integer.parseInt(properties.getProperty(MBR, MBR_DEFAULT));
+                    context = new HashMapOutputContext<K2, V2>(spillCombiner, partitioner, numPartitions,
+                                                               serialization, fileSystem, mapTask, outputCodec,
+                                                               spillCodec, bufferLimit);
+                } else {
+                    int bufferSize = Integer.parseInt(properties.getProperty(MBS, MBS_DEFAULT));
+                    context = new MapOutputContext<K2, V2>(spillCombiner, partitioner, numPartitions,
+                                                           serialization, comparator, merger, fileSystem, mapTask,
+                                                           outputCodec, spillCodec, bufferSize,
+                                                           node.getExecutorService(), parent);
+                }
                 try {
-                    MapOutputContext<K2, V2> context = new MapOutputContext<K2, V2>(combiner, os);
-                    try {
-                        while (reader.next()) {
-                            if (Thread.interrupted())
-                                throw new InterruptedException();
-                            K1 key = reader.getKey();
-                            V1 value = reader.getValue();
-                            mapper.map(key, value, context);
+                    TaskContext taskContext = newTaskContext();
+                    if (numThreads > 1) {
+                        List<Mapper<K1, V1, K2, V2>> mappers = new ArrayList<Mapper<K1, V1, K2, V2>>(numThreads);
+                        mappers.add(mapper);
+                        while (mappers.size() < numThreads)
+                            mappers.add(this.<Mapper<K1, V1, K2, V2>> newInstance(descriptor.getMapperClass()));
+                        int batchSize = Integer.parseInt(properties.getProperty(MRB, MRB_DEFAULT));
+                        MultithreadedMapRunner<K1, V1, K2, V2> runner =
+                            new MultithreadedMapRunner<K1, V1, K2, V2>(mappers, batchSize, taskContext);
+                        runner.run(reader, context);
+                    } else {
+                        mapper.setup(context, taskContext);
+                        if (mapper instanceof BatchMapper) {
+                            int batchSize = Integer.parseInt(properties.getProperty(MBA, MBA_DEFAULT));
+                            RecordBatch<K1, V1> batch = new RecordBatch<K1, V1>(batchSize);
+                            BatchMapper<K1, V1, K2, V2> batchMapper = (BatchMapper<K1, V1, K2, V2>)mapper;
+                            while (reader.next(batch)) {
+                                if (Thread.interrupted())
+                                    throw new InterruptedException();
+                                batchMapper.map(batch, context);
+                            }
+                        } else {
+                            while (reader.next()) {
+                                if (Thread.interrupted())
+                                    throw new InterruptedException();
+                                K1 key = reader.getKey();
+                                V1 value = reader.getValue();
+                                mapper.map(key, value, context);
+                            }
                         }
-                    } finally {
-                        context.close();
+                        mapper.cleanup(context);
                     }
                 } finally {
-                    os.close();
+                    context.close();
                 }
             } finally {
                 reader.close();
@@ -134,205 +280,240 @@ class TaskRunner implements Runnable {
         }
     }
 
+    /**
+     * Returns the context for setting up the task's mapper or reducer. The
+     * memory budget is the 'task.memory.budget' property, or by default a
+     * quarter of the heap divided among the task executor threads, which
+     * leaves the rest to the framework's buffers.
+     */
+    private TaskContext newTaskContext() {
+        Properties properties = descriptor.getProperties();
+        String budget = properties.getProperty(TMB);
+        if (budget != null)
+            return new TaskContext(properties, Long.parseLong(budget));
+        return new TaskContext(properties, Runtime.getRuntime().maxMemory() / 4 / parent.getNumThreads());
+    }
+
     private <T> T newInstance(String className) throws IOException {
         return ReflectionUtil.newInstance(className, classLoader);
     }
 
-    // TODO avoid keeping whole set in memory: limit buffer and spill to
-    // separate files once full. Merge spills at the end.
-    static class MapOutputContext<K, V> implements Context<K, V>, Closeable {
-
-        private final Reducer<K, V, K, V> combiner;
-        private final OutputStream os;
-        private final Map<K, List<V>> map;
-
-        public MapOutputContext(Reducer<K, V, K, V> combiner, OutputStream os) {
-            this.combiner = combiner;
-            this.os = os;
-            this.map = new TreeMap<K, List<V>>();
-        }
-
-        @Override
-        public void write(K key, V value) throws IOException {
-            List<V> values = map.get(key);
-            if (values == null)
-                map.put(key, values = new LinkedList<V>());
-            values.add(value);
-        }
-
-        @Override
-        public void close() throws IOException {
-            if (map.isEmpty())
-                return;
-            if (combiner != null) {
-                MapOutputContext<K, V> subContext = new MapOutputContext<K, V>(null, os);
-                try {
-                    Iterator<Entry<K, List<V>>> it = map.entrySet().iterator();
-                    while (it.hasNext()) {
-                        Entry<K, List<V>> entry = it.next();
-                        combiner.reduce(entry.getKey(), entry.getValue(), subContext);
-                        it.remove();
-                    }
-                } finally {
-                    subContext.close();
-                }
-            } else {
-                ObjectOutputStream oos = new ObjectOutputStream(os);
-                try {
-                    int chunk = OBJECT_CHUNKS;
-                    for (Entry<K, List<V>> entry : map.entrySet()) {
-                        oos.writeObject(entry.getKey());
-                        oos.writeObject(entry.getValue());
-                        if (chunk-- == 0) {
-                            oos.reset();
-                            chunk = OBJECT_CHUNKS;
-                        }
-                    }
-                    oos.writeObject(null);// sentinel
-                } finally {
-                    oos.close();
-                }
-            }
-        }
+    /**
+     * Returns a combiner for the job's combiner class, or null if the job does
+     * not have one.
+     */
+    private <K, V> Combiner<K, V> newCombiner() throws IOException {
+        String combinerClass = descriptor.getCombinerClass();
+        if (combinerClass == null)
+            return null;
+        Reducer<K, V, K, V> reducer = newInstance(combinerClass);
+        Properties properties = descriptor.getProperties();
+        double minReduction = Double.parseDouble(properties.getProperty(CMR, CMR_DEFAULT));
+        boolean reuseObjects = Boolean.parseBoolean(properties.getProperty(JOR, JOR_DEFAULT));
+        return new Combiner<K, V>(reducer, comparator, minReduction, reuseObjects);
     }
 
     private <K1, V1, K2, V2> void runReduce(TaskExecutorReduceTask reduceTask) throws Exception {
-        // 1. merge sorted files into one big sorted file
-        Path outputPath = reduceTask.getOutputPath();
-        Path mergedPath = outputPath.beforeLast().append(outputPath.last() + "-merged");
-        List<QualifiedPath> inputPaths = reduceTask.getInputPaths();
-        shuffle(inputPaths, mergedPath);
-
-        // 3. create object instances
+        // create object instances
         Reducer<K1, V1, K2, V2> reducer = newInstance(descriptor.getReducerClass());
         OutputFormat<K2, V2> outputFormat = newInstance(descriptor.getOutputFormatClass());
+        Properties properties = descriptor.getProperties();
+
+        // fetch map outputs to the local file system
+        Path outputPath = reduceTask.getOutputPath();
+        int numFetchers = Integer.parseInt(properties.getProperty(RSC, RSC_DEFAULT));
+        long pollInterval = Long.parseLong(properties.getProperty(RSP, RSP_DEFAULT));
+        JobID jobID = reduceTask.getId().getParentID().getParentID();
+        Path stagingPath = outputPath.beforeLast().append(outputPath.last() + "-input");
+        Shuffle shuffle = new Shuffle(node, parent, jobID, reduceTask.getPartition(), stagingPath, numFetchers,
+                                      pollInterval);
+        List<Path> inputPaths = shuffle.run();
 
-        // 2. run actual reducer
+        // run reducer
         try {
-            InputStream is = fileSystem.read(mergedPath);
+            OutputStream os = fileSystem.write(outputPath);
             try {
-                ObjectInputStream ois = new ObjectInputStream(is);
+                RecordWriter<K2, V2> writer = outputFormat.createRecordWriter(os, properties);
                 try {
-                    OutputStream os = fileSystem.write(outputPath);
-                    try {
-                        RecordWriter<K2, V2> writer = outputFormat.createRecordWriter(os, descriptor.getProperties());
-                        try {
-                            ReducerOutputContext<K2, V2> context = new ReducerOutputContext<K2, V2>(writer);
-                            K1 key = null;
-                            List<V1> values = new ArrayList<V1>();
-                            while (true) {
-                                @SuppressWarnings("unchecked")
-                                K1 curKey = (K1)ois.readObject();
-                                if (curKey == null)
-                                    break;
-                                @SuppressWarnings("unchecked")
-                                List<V1> curValues = (List<V1>)ois.readObject();
-                                if (key == null) {
-                                    key = curKey;
-                                    values.addAll(curValues);
-                                } else if (curKey.equals(key)) {
-                                    values.addAll(curValues);
-                                } else {
-                                    reducer.reduce(key, values, context);
-                                    key = curKey;
-                                    values = new ArrayList<V1>(curValues);
-                                }
-                            }
-                            reducer.reduce(key, values, context);
-                        } finally {
-                            writer.close();
-                        }
-                    } finally {
-                        os.close();
-                    }
+                    ReducerOutputContext<K2, V2> context = new ReducerOutputContext<K2, V2>(writer);
+                    reducer.setup(context, newTaskContext());
+                    if (descriptor.isUnordered())
+                        reduceUnordered(inputPaths, reducer, context, outputPath);
+                    else
+                        reduceSorted(inputPaths, reducer, context, outputPath);
+                    reducer.cleanup(context);
                 } finally {
-                    ois.close();
+                    writer.close();
                 }
             } finally {
-                is.close();
+                os.close();
             }
         } finally {
-            fileSystem.delete(mergedPath);
+            for (Path inputPath : inputPaths)
+                fileSystem.delete(inputPath);
         }
     }
 
-    private Path shuffle(Iterable<QualifiedPath> inputPaths, Path mergedPath) throws IOException,
-        ClassNotFoundException {
-        List<InputStream> iss = new ArrayList<InputStream>();
+    /**
+     * Merges the map outputs, either directly into the reducer or through a
+     * file, and reduces the merged records.
+     */
+    private <K1, V1, K2, V2> void reduceSorted(List<Path> inputPaths,
+                                               Reducer<K1, V1, K2, V2> reducer,
+                                               Context<K2, V2> context,
+                                               Path outputPath) throws Exception {
+        Properties properties = descriptor.getProperties();
+        boolean streaming = Boolean.parseBoolean(properties.getProperty(RS, RS_DEFAULT));
+        Path mergedPath = outputPath.beforeLast().append(outputPath.last() + "-merged");
+        List<Merger.Segment> segments = new ArrayList<Merger.Segment>(inputPaths.size());
+        for (Path inputPath : inputPaths)
+            segments.add(localSegment(inputPath, outputCodec));
+        Combiner<K1, V1> combiner = null;
+        if (Boolean.parseBoolean(properties.getProperty(CORM, CORM_DEFAULT)))
+            combiner = newCombiner();
+        Merger merger = newMerger(outputPath, combiner);
         try {
-            for (QualifiedPath qPath : inputPaths) {
-                FileSystemService fs = node.getFileSystemService(qPath.getNodeId());
-                InputStream is = fs.read(qPath.getPath());
-                iss.add(is);
+            if (!streaming) {
+                merger.merge(segments, Compression.compress(spillCodec, fileSystem.write(mergedPath)));
+                segments = Collections.singletonList(localSegment(mergedPath, spillCodec));
             }
-            OutputStream os = fileSystem.write(mergedPath);
+            MergeQueue<K1, V1> input = merger.open(segments);
             try {
-                merge(iss, os);
+                reduce(input, reducer, context, outputPath);
             } finally {
-                os.close();
+                input.close();
             }
         } finally {
-            for (InputStream is : iss)
-                is.close();
+            if (!streaming)
+                fileSystem.delete(mergedPath);
         }
-        return mergedPath;
     }
 
-    private static void merge(List<InputStream> inputStreams, OutputStream outputStream) throws IOException,
-        ClassNotFoundException {
-        List<ObjectInputStream> iss = new ArrayList<ObjectInputStream>(inputStreams.size());
-        for (InputStream is : inputStreams)
-            iss.add(new ObjectInputStream(is));
-        ObjectOutputStream os = new ObjectOutputStream(outputStream);
+    /**
+     * Groups the map outputs of an unordered job in a hash table and reduces
+     * each key. Once the table holds the configured number of values, it is
+     * compacted with the combiner (if any). If that does not free at least
+     * half of the table, the table and the rest of the input are sorted into
+     * runs on disk instead, which are merged and reduced like the input of a
+     * sorted job.
+     */
+    private <K1, V1, K2, V2> void reduceUnordered(List<Path> inputPaths,
+                                                  Reducer<K1, V1, K2, V2> reducer,
+                                                  Context<K2, V2> context,
+                                                  Path outputPath) throws Exception {
+        Properties properties = descriptor.getProperties();
+        int bufferLimit = Integer.parseInt(properties.getProperty(RAB, RAB_DEFAULT));
+        Combiner<K1, V1> combiner = newCombiner();
+        HashAggregator<K1, V1> table = new HashAggregator<K1, V1>(combiner, serialization);
+        // set once the table has been given up
+        RunSorter sorter = null;
         try {
-            List<Object[]> pairs = new ArrayList<Object[]>(iss.size());
-            for (int i = 0; i < iss.size(); i++)
-                pairs.add(null);
-            Object[] lowest;
-            int idx;
-            int chunk = OBJECT_CHUNKS;
-            while (!iss.isEmpty()) {
-                lowest = null;
-                idx = -1;
-                for (int i = 0; i < iss.size(); i++) {
-                    Object[] pair = pairs.get(i);
-                    if (pair == null) {
-                        ObjectInputStream ois = iss.get(i);
-                        pair = new Object[2];
-                        pair[0] = ois.readObject();
-                        if (pair[0] == null) {
-                            ois.close();
-                            iss.remove(i);
-                            pairs.remove(i);
+            for (Path inputPath : inputPaths) {
+                InputStream is = Compression.decompress(outputCodec, fileSystem.read(inputPath));
+                RunReader<K1, V1> reader = new RunReader<K1, V1>(is, serialization);
+                try {
+                    while (reader.next()) {
+                        if (Thread.interrupted())
+                            throw new InterruptedException();
+                        if (sorter != null) {
+                            sorter.add(reader.getKeyBytes(), reader.getKeyLength(), reader.getValueBytes(),
+                                       reader.getValueLength());
                             continue;
                         }
-                        pair[1] = ois.readObject();
-                        pairs.set(i, pair);
-                    }
-                    @SuppressWarnings("unchecked")
-                    Comparable<Object> key = (Comparable<Object>)pair[0];
-                    if (lowest == null || key.compareTo(lowest[0]) <= 0) {
-                        lowest = pair;
-                        idx = i;
+                        table.add(reader.getKey(), reader.getValue());
+                        if (table.size() >= bufferLimit && (!table.compact() || table.size() > bufferLimit / 2)) {
+                            int bufferSize = Integer.parseInt(properties.getProperty(MBS, MBS_DEFAULT));
+                            sorter = new RunSorter(fileSystem, serialization, comparator, bufferSize, outputPath,
+                                                   spillCodec);
+                            for (Entry<K1, List<V1>> entry : table.entries())
+                                for (V1 value : entry.getValue())
+                                    sorter.add(entry.getKey(), value);
+                            table.clear();
+                        }
                     }
+                } finally {
+                    reader.close();
                 }
-                if (lowest != null) {
-                    os.writeObject(lowest[0]);
-                    os.writeObject(lowest[1]);
-                    pairs.set(idx, null);
-                }
-                if (chunk-- == 0) {
-                    os.flush();
-                    os.reset();
-                    chunk = OBJECT_CHUNKS;
+            }
+            if (sorter == null) {
+                for (Entry<K1, List<V1>> entry : table.entries()) {
+                    if (Thread.interrupted())
+                        throw new InterruptedException();
+                    reducer.reduce(entry.getKey(), entry.getValue(), context);
                 }
+                return;
+            }
+            List<Merger.Segment> segments = new ArrayList<Merger.Segment>();
+            for (Path run : sorter.finish())
+                segments.add(localSegment(run, spillCodec));
+            MergeQueue<K1, V1> input = newMerger(outputPath, combiner).open(segments);
+            try {
+                reduce(input, reducer, context, outputPath);
+            } finally {
+                input.close();
+            }
+        } finally {
+            if (sorter != null)
+                sorter.delete();
+        }
+    }
+
+    /**
+     * Groups the merged records by key and passes each group to the reducer.
+     * Values are streamed from the merge; if the job sets
+     * 'reduce.values.markable', they are also copied to a backup store so the
+     * reducer can iterate them more than once. A {@link LongReducer} is given
+     * the values as primitives, decoded from their serialized form.
+     */
+    @SuppressWarnings("unchecked")
+    private <K1, V1, K2, V2> void reduce(MergeQueue<K1, V1> input,
+                                         Reducer<K1, V1, K2, V2> reducer,
+                                         Context<K2, V2> context,
+                                         Path outputPath) throws Exception {
+        Properties properties = descriptor.getProperties();
+        // values of a LongReducer can be iterated only once
+        LongReducer<K1, K2, V2> longReducer = null;
+        if (reducer instanceof LongReducer)
+            longReducer = (LongReducer<K1, K2, V2>)(Reducer<?, ?, ?, ?>)reducer;
+        BackupStore<V1> store = null;
+        if (longReducer == null && Boolean.parseBoolean(properties.getProperty(RVM, RVM_DEFAULT))) {
+            Path backupPath = outputPath.beforeLast().append(outputPath.last() + "-backup");
+            int memoryLimit = Integer.parseInt(properties.getProperty(RVB, RVB_DEFAULT));
+            store = new BackupStore<V1>(fileSystem, serialization, backupPath, memoryLimit);
+        }
+        try {
+            boolean reuseObjects = Boolean.parseBoolean(properties.getProperty(JOR, JOR_DEFAULT));
+            Grouper<K1, V1> grouper = new Grouper<K1, V1>(input, comparator, store, reuseObjects);
+            while (grouper.nextKey()) {
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+                if (longReducer != null)
+                    longReducer.reduce(grouper.getKey(), grouper.getLongValues(), context);
+                else
+                    reducer.reduce(grouper.getKey(), grouper.getValues(), context);
             }
-            os.writeObject(null);
         } finally {
-            os.flush();
+            if (store != null)
+                store.close();
         }
     }
 
+    private Merger.Segment localSegment(final Path path, final CompressionCodec codec) {
+        return new Merger.Segment() {
+            @Override
+            public InputStream open() throws IOException {
+                return Compression.decompress(codec, fileSystem.read(path));
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private Merger newMerger(Path tempPath, Combiner<?, ?> combiner) {
+        int factor = Integer.parseInt(descriptor.getProperties().getProperty(MF, MF_DEFAULT));
+        return new Merger(fileSystem, serialization, comparator, factor, tempPath, (Combiner<Object, Object>)combiner,
+                          spillCodec);
+    }
+
     static class ReducerOutputContext<K, V> implements Context<K, V> {
 
         private final RecordWriter<K, V> writer;
@@ -0,0 +1,24 @@
+package edu.illinois.cs.mr.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An OutputStream whose data can be discarded instead of completed. Closing
+ * the stream completes the write, while aborting it ends the write and
+ * discards everything that has been written, so that a writer that fails
+ * midway leaves no truncated data behind. Aborting a closed stream has no
+ * effect.
+ * 
+ * @author benjamin
+ */
+public abstract class AbortableOutputStream extends OutputStream {
+
+    /**
+     * Ends the write and discards the data written so far.
+     * 
+     * @throws IOException if the data could not be discarded
+     */
+    public abstract void abort() throws IOException;
+
+}
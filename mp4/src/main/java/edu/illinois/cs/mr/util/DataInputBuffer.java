@@ -0,0 +1,50 @@
+package edu.illinois.cs.mr.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+
+/**
+ * A reusable DataInput that reads from a region of a byte array.
+ * 
+ * @author benjamin
+ */
+public class DataInputBuffer extends DataInputStream {
+
+    private static class Buffer extends ByteArrayInputStream {
+        Buffer() {
+            super(new byte[0]);
+        }
+
+        void reset(byte[] data, int offset, int length) {
+            this.buf = data;
+            this.pos = offset;
+            this.mark = offset;
+            this.count = offset + length;
+        }
+    }
+
+    private final Buffer buffer;
+
+    public DataInputBuffer() {
+        this(new Buffer());
+    }
+
+    private DataInputBuffer(Buffer buffer) {
+        super(buffer);
+        this.buffer = buffer;
+    }
+
+    /**
+     * Points this buffer to the given region of the array.
+     * 
+     * @param data
+     * @param offset
+     * @param length
+     * @return this buffer
+     */
+    public DataInputBuffer reset(byte[] data, int offset, int length) {
+        buffer.reset(data, offset, length);
+        return this;
+    }
+
+}
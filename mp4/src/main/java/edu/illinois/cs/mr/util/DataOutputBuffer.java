@@ -0,0 +1,56 @@
+package edu.illinois.cs.mr.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+
+/**
+ * A reusable DataOutput backed by a growable byte array. The written bytes can
+ * be accessed without copying.
+ * 
+ * @author benjamin
+ */
+public class DataOutputBuffer extends DataOutputStream {
+
+    private static class Buffer extends ByteArrayOutputStream {
+        byte[] getData() {
+            return buf;
+        }
+    }
+
+    private final Buffer buffer;
+
+    public DataOutputBuffer() {
+        this(new Buffer());
+    }
+
+    private DataOutputBuffer(Buffer buffer) {
+        super(buffer);
+        this.buffer = buffer;
+    }
+
+    /**
+     * Returns the backing array. Only the first {@link #getLength()} bytes are
+     * valid.
+     * 
+     * @return
+     */
+    public byte[] getData() {
+        return buffer.getData();
+    }
+
+    public int getLength() {
+        return buffer.size();
+    }
+
+    /**
+     * Discards all written data, but keeps the backing array.
+     * 
+     * @return this buffer
+     */
+    public DataOutputBuffer reset() {
+        written = 0;
+        buffer.reset();
+        return this;
+    }
+
+}
@@ -109,12 +109,12 @@ public final class FileUtil {
         if (file.isFile()) {
             return file.delete();
         } else {
-            boolean deleted = false;
+            boolean deleted = true;
             String[] children = file.list();
             if (children != null)
                 for (String child : children)
                     deleted &= deleteRecursive(new File(file, child));
-            return deleted ? file.delete() : deleted;
+            return deleted && file.delete();
         }
     }
 }
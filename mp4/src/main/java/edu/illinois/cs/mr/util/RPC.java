@@ -32,6 +32,9 @@ public class RPC {
 
     private static final int CHUNK_SIZE = 0x100000; // 1M
     private static final int BUF_SIZE = 0x1000; // 4K
+    private static final int STREAM_CHUNK_SIZE = 0x10000; // 64K
+    // chunk length that ends a stream whose data is to be discarded
+    private static final int ABORT = -1;
 
     public static class RPCServer implements Runnable {
 
@@ -117,6 +120,14 @@ public class RPC {
                     }
 
                     ObjectOutputStream os = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                    if (error == null && AbortableOutputStream.class.isAssignableFrom(method.getReturnType())) {
+                        // acknowledge the open, then receive the data and
+                        // report whether it has been written
+                        os.writeBoolean(true);
+                        os.flush();
+                        error = receive(new ChunkedInputStream<ObjectInputStream>(is), (AbortableOutputStream)result);
+                        result = null;
+                    }
                     os.writeBoolean(error == null);
                     if (error != null) {
                         os.writeObject(error);
@@ -129,7 +140,7 @@ public class RPC {
                             } finally {
                                 resultIs.close();
                             }
-                        } else {
+                        } else if (!AbortableOutputStream.class.isAssignableFrom(method.getReturnType())) {
                             os.writeObject(result);
                         }
                     }
@@ -192,6 +203,9 @@ public class RPC {
                             }
                         };
                         close = false;
+                    } else if (AbortableOutputStream.class.isAssignableFrom(method.getReturnType())) {
+                        result = new RemoteOutputStream(socket, os, is);
+                        close = false;
                     } else {
                         result = is.readObject();
                     }
@@ -220,6 +234,7 @@ public class RPC {
 
         private final T is;
         private int remaining = 0;
+        private boolean end;
 
         ChunkedInputStream(T is) throws IOException {
             this.is = is;
@@ -252,10 +267,146 @@ public class RPC {
         }
 
         private boolean eof() throws IOException {
-            if (remaining == 0)
+            if (remaining == 0 && !end) {
                 remaining = is.readInt();
+                if (remaining == ABORT) {
+                    remaining = 0;
+                    end = true;
+                    throw new IOException("stream aborted by the client");
+                }
+                end = remaining == 0;
+            }
             return remaining == 0;
         }
+
+        /**
+         * Returns true if the end or the abort marker has been read.
+         */
+        boolean isEnd() {
+            return end;
+        }
+    }
+
+    /**
+     * Streams the data of a remote write to the server in chunks. Closing the
+     * stream ends the data and waits for the server to report the outcome of
+     * the write. Aborting the stream drops the buffered chunk, sends the abort
+     * marker instead, and waits for the server to discard the data.
+     */
+    private static class RemoteOutputStream extends AbortableOutputStream {
+
+        private final Socket socket;
+        private final ObjectOutputStream os;
+        private final ObjectInputStream is;
+        private final byte[] chunk = new byte[STREAM_CHUNK_SIZE];
+        private int length;
+        private boolean closed;
+
+        RemoteOutputStream(Socket socket, ObjectOutputStream os, ObjectInputStream is) {
+            this.socket = socket;
+            this.os = os;
+            this.is = is;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (length == chunk.length)
+                writeChunk();
+            chunk[length++] = (byte)b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (length == chunk.length)
+                    writeChunk();
+                int n = min(len, chunk.length - length);
+                System.arraycopy(b, off, chunk, length, n);
+                length += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void writeChunk() throws IOException {
+            if (length == 0)
+                return;
+            os.writeInt(length);
+            os.write(chunk, 0, length);
+            length = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+            closed = true;
+            try {
+                writeChunk();
+                os.writeInt(0);
+                os.flush();
+                if (!is.readBoolean()) {
+                    Throwable t = (Throwable)is.readObject();
+                    if (t instanceof IOException)
+                        throw (IOException)t;
+                    throw new IOException(t);
+                }
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            } finally {
+                socket.close();
+            }
+        }
+
+        @Override
+        public void abort() throws IOException {
+            if (closed)
+                return;
+            closed = true;
+            try {
+                os.writeInt(ABORT);
+                os.flush();
+                // the server reports the abort as the outcome of the write
+                if (!is.readBoolean())
+                    is.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            } finally {
+                socket.close();
+            }
+        }
+    }
+
+    /**
+     * Copies the chunked data of a remote write to the given stream and closes
+     * it. If the client aborts the write or the copy fails, the stream is
+     * aborted, and the rest of the data is skipped so that the error can be
+     * reported to the client.
+     * 
+     * @return the error that occurred, or null
+     */
+    private static Throwable receive(ChunkedInputStream<?> is, AbortableOutputStream os) {
+        byte[] buffer = new byte[BUF_SIZE];
+        try {
+            int read;
+            while ((read = is.read(buffer)) != -1)
+                os.write(buffer, 0, read);
+            os.close();
+            return null;
+        } catch (Throwable t) {
+            try {
+                os.abort();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            try {
+                while (!is.isEnd() && is.read(buffer) != -1)
+                    ;
+            } catch (IOException e) {
+                // aborted by the client, or the connection is lost
+            }
+            return t;
+        }
     }
 
     private static void chunkTransfer(InputStream is, DataOutput os) throws IOException {
@@ -0,0 +1,333 @@
+package edu.illinois.cs.mapreduce.api.lib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.illinois.cs.mapreduce.api.NormalizedKeyComparator;
+import edu.illinois.cs.mr.util.DataInputBuffer;
+import edu.illinois.cs.mr.util.DataOutputBuffer;
+
+/**
+ * Tests the binary format and checks that comparing serialized keys and their
+ * normalized prefixes orders them like the keys themselves.
+ * 
+ * @author benjamin
+ */
+public class BinarySerializationTest {
+
+    private final BinarySerialization serialization = new BinarySerialization();
+    private final NormalizedKeyComparator<Object> comparator =
+        (NormalizedKeyComparator<Object>)serialization.getRawComparator();
+    private final Random random = new Random(0);
+
+    @Test
+    public void roundTripsObjects() throws IOException {
+        Object[] objects = { null, 0L, Long.MIN_VALUE, Long.MAX_VALUE, -1, Integer.MIN_VALUE, Integer.MAX_VALUE,
+                            "", "text", "\u00e9\u4e2d\ud83d\ude00", new LongValue(-5), new IntValue(-7),
+                            new DoubleValue(-0.5), new DoubleValue(Double.NaN), new Text(""), new Text("t\u00e9xt"),
+                            new BigInteger("-123456789012345678901234567890") };
+        for (Object object : objects)
+            assertEquals(object, roundTrip(object));
+        for (int length : new int[] { 0, 1, 127, 128, 20000 }) {
+            byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+            assertArrayEquals(bytes, (byte[])roundTrip(bytes));
+        }
+    }
+
+    @Test
+    public void writesFixedWidthNumbers() throws IOException {
+        assertEquals(9, serialize(Long.MIN_VALUE).length);
+        assertEquals(5, serialize(-1).length);
+        assertEquals(9, serialize(new DoubleValue(-1)).length);
+        assertEquals(1, serialize(null).length);
+    }
+
+    @Test
+    public void readsMutableTypesIntoReusedObjects() throws IOException {
+        Object[] reused = { new LongValue(1), new IntValue(1), new DoubleValue(1), new Text("reused") };
+        Object[] objects = { new LongValue(-2), new IntValue(-3), new DoubleValue(-4.5), new Text("read") };
+        for (int i = 0; i < objects.length; i++) {
+            byte[] bytes = serialize(objects[i]);
+            DataInputBuffer in = new DataInputBuffer();
+            in.reset(bytes, 0, bytes.length);
+            assertSame(reused[i], serialization.deserialize(in, reused[i]));
+            assertEquals(objects[i], reused[i]);
+        }
+        // a reused object of another type is ignored
+        byte[] bytes = serialize(new LongValue(8));
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(bytes, 0, bytes.length);
+        assertEquals(new LongValue(8), serialization.deserialize(in, new Text()));
+    }
+
+    @Test
+    public void copiesMutableTypes() throws IOException {
+        for (Object object : new Object[] { new LongValue(1), new IntValue(2), new DoubleValue(3), new Text("4") }) {
+            Object copy = serialization.copy(object);
+            assertNotSame(object, copy);
+            assertEquals(object, copy);
+        }
+        byte[] bytes = { 1, 2, 3 };
+        byte[] copy = (byte[])serialization.copy(bytes);
+        assertNotSame(bytes, copy);
+        assertArrayEquals(bytes, copy);
+        String string = "immutable";
+        assertSame(string, serialization.copy(string));
+    }
+
+    @Test
+    public void deserializesLongs() throws IOException {
+        for (long value : new long[] { 0, -1, 1, Integer.MIN_VALUE, Integer.MAX_VALUE, Long.MIN_VALUE,
+                                      Long.MAX_VALUE }) {
+            assertEquals(value, deserializeLong(value));
+            assertEquals(value, deserializeLong(new LongValue(value)));
+            assertEquals((int)value, deserializeLong((int)value));
+            assertEquals((int)value, deserializeLong(new IntValue((int)value)));
+        }
+        // other numbers are deserialized
+        assertEquals(-3, deserializeLong(Short.valueOf((short)-3)));
+        assertEquals(-3, deserializeLong(new DoubleValue(-3.5)));
+        try {
+            deserializeLong("3");
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void encodesVarInts() throws IOException {
+        List<Integer> values = new ArrayList<Integer>(Arrays.asList(0, 1, 127, 128, 16383, 16384, -1, -128,
+                                                                    Integer.MIN_VALUE, Integer.MAX_VALUE));
+        for (int i = 0; i < 1000; i++)
+            values.add(random.nextInt() >> random.nextInt(32));
+        DataOutputBuffer out = new DataOutputBuffer();
+        byte[] array = new byte[5];
+        for (int value : values) {
+            int size = VarInt.getVIntSize(value);
+            if (value < 0)
+                assertEquals(5, size);
+            else if (value < 128)
+                assertEquals(1, size);
+            VarInt.writeVInt(out.reset(), value);
+            assertEquals(size, out.getLength());
+            assertEquals(size, VarInt.writeVInt(array, 0, value));
+            assertArrayEquals(Arrays.copyOf(out.getData(), size), Arrays.copyOf(array, size));
+            assertEquals(value, VarInt.readVInt(array, 0));
+            DataInputBuffer in = new DataInputBuffer();
+            in.reset(out.getData(), 0, out.getLength());
+            assertEquals(value, VarInt.readVInt(in));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMalformedVarInt() {
+        VarInt.readVInt(new byte[] { -1, -1, -1, -1, -1, -1 }, 0);
+    }
+
+    @Test
+    public void ordersLongsLikeObjects() throws IOException {
+        List<Object> longs = new ArrayList<Object>();
+        List<Object> longValues = new ArrayList<Object>();
+        for (long value : new long[] { Long.MIN_VALUE, Long.MIN_VALUE + 1, -(1L << 32), -1, 0, 1, 1L << 32,
+                                      Long.MAX_VALUE - 1, Long.MAX_VALUE }) {
+            longs.add(value);
+            longValues.add(new LongValue(value));
+        }
+        for (int i = 0; i < 50; i++) {
+            long value = random.nextLong() >> random.nextInt(64);
+            longs.add(value);
+            longValues.add(new LongValue(value));
+        }
+        assertOrder(longs, null);
+        assertOrder(longValues, null);
+    }
+
+    @Test
+    public void ordersIntegersLikeObjects() throws IOException {
+        List<Object> integers = new ArrayList<Object>();
+        List<Object> intValues = new ArrayList<Object>();
+        for (int value : new int[] { Integer.MIN_VALUE, -65536, -1, 0, 1, 65536, Integer.MAX_VALUE }) {
+            integers.add(value);
+            intValues.add(new IntValue(value));
+        }
+        for (int i = 0; i < 50; i++) {
+            int value = random.nextInt() >> random.nextInt(32);
+            integers.add(value);
+            intValues.add(new IntValue(value));
+        }
+        assertOrder(integers, null);
+        assertOrder(intValues, null);
+    }
+
+    @Test
+    public void ordersDoublesLikeObjects() throws IOException {
+        List<Object> doubles = new ArrayList<Object>();
+        for (double value : new double[] { Double.NEGATIVE_INFINITY, -Double.MAX_VALUE, -1e10, -1.5, -1, -0.5,
+                                          -Double.MIN_VALUE, -0.0, 0.0, Double.MIN_VALUE, 0.5, 1, 1.5, 1e10,
+                                          Double.MAX_VALUE, Double.POSITIVE_INFINITY, Double.NaN })
+            doubles.add(new DoubleValue(value));
+        for (int i = 0; i < 50; i++)
+            doubles.add(new DoubleValue(random.nextGaussian() * Math.pow(10, random.nextInt(20) - 10)));
+        assertOrder(doubles, null);
+    }
+
+    @Test
+    public void ordersStringsByCodePoint() throws IOException {
+        List<Object> strings = new ArrayList<Object>(Arrays.asList("", "a", "ab", "abcdefgh", "abcdefghi",
+                                                                   "abcdefgi", "b", "\u007f", "\u0080", "\u00e9",
+                                                                   "\u4e2d", "\uffff", "\ud83d\ude00"));
+        for (int i = 0; i < 50; i++)
+            strings.add(randomString());
+        assertOrder(strings, new Comparator<Object>() {
+            @Override
+            public int compare(Object o1, Object o2) {
+                String s1 = (String)o1, s2 = (String)o2;
+                int i1 = 0, i2 = 0;
+                while (i1 < s1.length() && i2 < s2.length()) {
+                    int c1 = s1.codePointAt(i1), c2 = s2.codePointAt(i2);
+                    if (c1 != c2)
+                        return c1 - c2;
+                    i1 += Character.charCount(c1);
+                    i2 += Character.charCount(c2);
+                }
+                return (s1.length() - i1) - (s2.length() - i2);
+            }
+        });
+        List<Object> texts = new ArrayList<Object>();
+        for (Object string : strings)
+            texts.add(new Text((String)string));
+        assertOrder(texts, null);
+    }
+
+    @Test
+    public void ordersBytesAsUnsigned() throws IOException {
+        List<Object> arrays = new ArrayList<Object>();
+        arrays.add(new byte[0]);
+        arrays.add(new byte[] { 0 });
+        arrays.add(new byte[] { 0x7f });
+        arrays.add(new byte[] { (byte)0x80 });
+        arrays.add(new byte[] { -1, -1, -1, -1, -1, -1, -1, -1 });
+        arrays.add(new byte[] { -1, -1, -1, -1, -1, -1, -1, -1, 0 });
+        for (int i = 0; i < 50; i++) {
+            byte[] bytes = new byte[random.nextInt(12)];
+            random.nextBytes(bytes);
+            arrays.add(bytes);
+        }
+        assertOrder(arrays, new Comparator<Object>() {
+            @Override
+            public int compare(Object o1, Object o2) {
+                byte[] b1 = (byte[])o1, b2 = (byte[])o2;
+                for (int i = 0; i < Math.min(b1.length, b2.length); i++)
+                    if (b1[i] != b2[i])
+                        return (b1[i] & 0xFF) - (b2[i] & 0xFF);
+                return b1.length - b2.length;
+            }
+        });
+    }
+
+    @Test
+    public void ordersTypesByTag() throws IOException {
+        Object[] objects = { null, 1L, -1, "s", new byte[] { 1 }, new LongValue(-1), new IntValue(1),
+                            new DoubleValue(-1), new Text("t") };
+        for (int i = 0; i < objects.length; i++) {
+            for (int j = 0; j < objects.length; j++) {
+                byte[] b1 = serialize(objects[i]), b2 = serialize(objects[j]);
+                assertEquals(Integer.signum(b1[0] - b2[0]), Integer.signum(compare(b1, b2)));
+                assertEquals(Integer.signum(b1[0] - b2[0]), Integer.signum(comparePrefixes(b1, b2)));
+            }
+        }
+    }
+
+    /**
+     * Asserts that the serialized objects and their prefixes are ordered like
+     * the objects. Prefixes may tie for different objects, but must never
+     * contradict their order.
+     * 
+     * @param reference order of the objects, or null for their natural order
+     */
+    @SuppressWarnings("unchecked")
+    private void assertOrder(List<Object> objects, Comparator<Object> reference) throws IOException {
+        for (Object o1 : objects) {
+            byte[] b1 = serialize(o1);
+            for (Object o2 : objects) {
+                byte[] b2 = serialize(o2);
+                int expected =
+                    Integer.signum(reference == null ? ((Comparable<Object>)o1).compareTo(o2)
+                                                     : reference.compare(o1, o2));
+                assertEquals(o1 + " vs " + o2, expected, Integer.signum(compare(b1, b2)));
+                int prefixes = Integer.signum(comparePrefixes(b1, b2));
+                assertTrue(o1 + " vs " + o2, prefixes == 0 || prefixes == expected);
+                if (!(o1 instanceof byte[]))
+                    assertEquals(o1 + " vs " + o2, expected, Integer.signum(comparator.compare(o1, o2)));
+            }
+        }
+    }
+
+    private int compare(byte[] b1, byte[] b2) {
+        return comparator.compare(b1, 0, b1.length, b2, 0, b2.length);
+    }
+
+    private int comparePrefixes(byte[] b1, byte[] b2) {
+        long p1 = comparator.getPrefix(b1, 0, b1.length) ^ Long.MIN_VALUE;
+        long p2 = comparator.getPrefix(b2, 0, b2.length) ^ Long.MIN_VALUE;
+        return p1 < p2 ? -1 : (p1 == p2 ? 0 : 1);
+    }
+
+    private String randomString() {
+        StringBuilder s = new StringBuilder();
+        int length = random.nextInt(12);
+        for (int i = 0; i < length; i++) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    s.append((char)('a' + random.nextInt(3)));
+                    break;
+                case 1:
+                    s.append((char)(0x80 + random.nextInt(0x700)));
+                    break;
+                case 2:
+                    s.append((char)(0xE000 + random.nextInt(0x1FFE)));
+                    break;
+                default:
+                    s.appendCodePoint(0x10000 + random.nextInt(0x1000));
+            }
+        }
+        return s.toString();
+    }
+
+    private long deserializeLong(Object object) throws IOException {
+        byte[] bytes = serialize(object);
+        return serialization.deserializeLong(bytes, 0, bytes.length);
+    }
+
+    private Object roundTrip(Object object) throws IOException {
+        byte[] bytes = serialize(object);
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(bytes, 0, bytes.length);
+        Object result = serialization.deserialize(in);
+        assertEquals(0, in.available());
+        return result;
+    }
+
+    private byte[] serialize(Object object) throws IOException {
+        DataOutputBuffer out = new DataOutputBuffer();
+        serialization.serialize(object, out);
+        return Arrays.copyOf(out.getData(), out.getLength());
+    }
+
+}
@@ -0,0 +1,133 @@
+package edu.illinois.cs.mapreduce.api.lib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests that byte range splits end on line boundaries.
+ * 
+ * @author benjamin
+ */
+public class ByteRangeTextSplitterTest {
+
+    private final List<File> files = new ArrayList<File>();
+
+    @After
+    public void tearDown() {
+        for (File file : files)
+            file.delete();
+    }
+
+    @Test
+    public void keepsSplitsThatEndOnNewline() throws IOException {
+        List<TextSplit> splits = split("aaaa\nbbbb\ncccc\n", 5);
+        assertEquals(3, splits.size());
+        assertRange(splits.get(0), 0, 5);
+        assertRange(splits.get(1), 5, 5);
+        assertRange(splits.get(2), 10, 5);
+    }
+
+    @Test
+    public void extendsSplitsToEndOfLine() throws IOException {
+        List<TextSplit> splits = split("aaaaaaa\nb\ncc\n", 4);
+        assertEquals(2, splits.size());
+        assertRange(splits.get(0), 0, 8);
+        assertRange(splits.get(1), 8, 5);
+    }
+
+    @Test
+    public void endsLastSplitAtEndOfFile() throws IOException {
+        List<TextSplit> splits = split("aa\nbb\ncc", 3);
+        assertEquals(3, splits.size());
+        assertRange(splits.get(2), 6, 2);
+    }
+
+    @Test
+    public void coversFileWithLinesOfAnyLength() throws IOException {
+        Random random = new Random(0);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            int length = random.nextInt(10) == 0 ? random.nextInt(20000) : random.nextInt(50);
+            for (int j = 0; j < length; j++)
+                text.append((char)('a' + random.nextInt(26)));
+            text.append(random.nextBoolean() ? "\n" : "\r\n");
+        }
+        byte[] data = text.toString().getBytes("US-ASCII");
+        for (int bytesPerSplit : new int[] { 1, 2, 100, 4096, 10000 }) {
+            List<TextSplit> splits = split(text.toString(), bytesPerSplit);
+            long start = 0;
+            for (TextSplit split : splits) {
+                assertEquals(start, split.getStart());
+                int end = (int)(split.getStart() + split.getLength());
+                assertTrue(split.getLength() >= Math.min(bytesPerSplit, data.length - start));
+                assertEquals('\n', data[end - 1]);
+                // the split ends with the first newline in its last nominal byte or after
+                for (int i = (int)split.getStart() + bytesPerSplit - 1; i < end - 1; i++)
+                    assertTrue(data[i] != '\n');
+                start = end;
+            }
+            assertEquals(data.length, start);
+        }
+    }
+
+    @Test
+    public void writesSplitContents() throws IOException {
+        String text = "first line\nsecond line\nthird line\n";
+        File file = write(text);
+        FileInputStream is = new FileInputStream(file);
+        try {
+            ByteRangeTextSplitter splitter = new ByteRangeTextSplitter(is.getChannel(), 15);
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            assertRange(splitter.writeSplit(os), 0, 23);
+            assertArrayEquals("first line\nsecond line\n".getBytes("US-ASCII"), os.toByteArray());
+        } finally {
+            is.close();
+        }
+    }
+
+    private List<TextSplit> split(String text, long bytesPerSplit) throws IOException {
+        FileInputStream is = new FileInputStream(write(text));
+        try {
+            ByteRangeTextSplitter splitter = new ByteRangeTextSplitter(is.getChannel(), bytesPerSplit);
+            List<TextSplit> splits = new ArrayList<TextSplit>();
+            while (!splitter.isEOF())
+                splits.add(splitter.nextSplit());
+            return splits;
+        } finally {
+            is.close();
+        }
+    }
+
+    private File write(String text) throws IOException {
+        File file = File.createTempFile("splitter", ".txt");
+        files.add(file);
+        OutputStream os = new FileOutputStream(file);
+        try {
+            os.write(text.getBytes("US-ASCII"));
+        } finally {
+            os.close();
+        }
+        return file;
+    }
+
+    private static void assertRange(TextSplit split, long start, long length) {
+        assertTrue(split.isByteRange());
+        assertEquals(start, split.getStart());
+        assertEquals(length, split.getLength());
+    }
+
+}
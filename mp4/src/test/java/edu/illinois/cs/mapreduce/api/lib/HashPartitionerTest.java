@@ -0,0 +1,50 @@
+package edu.illinois.cs.mapreduce.api.lib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests that equal keys are assigned to the same partition.
+ * 
+ * @author benjamin
+ */
+public class HashPartitionerTest {
+
+    private final HashPartitioner<Object, Object> partitioner = new HashPartitioner<Object, Object>();
+
+    @Test
+    public void partitionsByteArraysByContent() throws Exception {
+        Set<Integer> partitions = new HashSet<Integer>();
+        for (int i = 0; i < 100; i++) {
+            byte[] key = ("word" + i).getBytes("US-ASCII");
+            int partition = partitioner.getPartition(key, null, 3);
+            assertEquals(partition, partitioner.getPartition(key.clone(), null, 3));
+            assertEquals(partition, partitioner.getPartition(("word" + i).getBytes("US-ASCII"), null, 3));
+            partitions.add(partition);
+        }
+        // keys are still spread over all partitions
+        assertEquals(3, partitions.size());
+    }
+
+    @Test
+    public void partitionsKeysIntoRange() {
+        for (int i = -1000; i < 1000; i++) {
+            int partition = partitioner.getPartition(Long.valueOf(i * 7919L), null, 5);
+            assertTrue(partition >= 0 && partition < 5);
+            partition = partitioner.getPartition(new Text("key" + i), null, 5);
+            assertTrue(partition >= 0 && partition < 5);
+            assertEquals(partition, partitioner.getPartition(new Text("key" + i), null, 5));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOtherArrays() {
+        partitioner.getPartition(new int[] { 1, 2 }, null, 3);
+    }
+
+}
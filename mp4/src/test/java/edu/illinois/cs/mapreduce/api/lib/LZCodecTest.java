@@ -0,0 +1,119 @@
+package edu.illinois.cs.mapreduce.api.lib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.illinois.cs.mapreduce.api.CompressionCodec;
+
+/**
+ * Tests that data compressed by the {@link LZCodec} decompresses to the same
+ * bytes.
+ * 
+ * @author benjamin
+ */
+public class LZCodecTest {
+
+    private final CompressionCodec codec = new LZCodec();
+    private final Random random = new Random(0);
+
+    @Test
+    public void roundTripsEmptyInput() throws IOException {
+        assertArrayEquals(new byte[0], decompress(compress(new byte[0], 1)));
+    }
+
+    @Test
+    public void roundTripsShortInput() throws IOException {
+        byte[] data = { 1, 2, 3 };
+        assertArrayEquals(data, decompress(compress(data, 1)));
+    }
+
+    @Test
+    public void roundTripsRepetitiveInput() throws IOException {
+        byte[] data = new byte[300000];
+        byte[] pattern = "the quick brown fox jumps over the lazy dog\n".getBytes("US-ASCII");
+        for (int i = 0; i < data.length; i++)
+            data[i] = pattern[i % pattern.length];
+        byte[] compressed = compress(data, 1000);
+        assertTrue(compressed.length < data.length / 10);
+        assertArrayEquals(data, decompress(compressed));
+    }
+
+    @Test
+    public void roundTripsRandomInput() throws IOException {
+        byte[] data = new byte[200000];
+        random.nextBytes(data);
+        byte[] compressed = compress(data, 7777);
+        // blocks that do not shrink are stored as they are
+        assertTrue(compressed.length < data.length + 100);
+        assertArrayEquals(data, decompress(compressed));
+    }
+
+    @Test
+    public void roundTripsMixedInput() throws IOException {
+        byte[] data = new byte[500000];
+        for (int i = 0; i < data.length;) {
+            int length = Math.min(data.length - i, 1 + random.nextInt(300));
+            if (random.nextBoolean() && i >= length) {
+                int from = random.nextInt(i - length + 1);
+                System.arraycopy(data, from, data, i, length);
+            } else {
+                for (int j = i; j < i + length; j++)
+                    data[j] = (byte)random.nextInt(4);
+            }
+            i += length;
+        }
+        assertArrayEquals(data, decompress(compress(data, 65536)));
+        assertArrayEquals(data, decompress(compress(data, 65537)));
+    }
+
+    @Test
+    public void roundTripsSingleByteWrites() throws IOException {
+        byte[] data = new byte[70000];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte)(i % 251);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream os = codec.createOutputStream(bytes);
+        for (byte b : data)
+            os.write(b);
+        os.close();
+        InputStream is = codec.createInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (int i = 0; i < data.length; i++)
+            assertEquals(data[i], (byte)is.read());
+        assertEquals(-1, is.read());
+        is.close();
+    }
+
+    /**
+     * Compresses the data, writing it in chunks of the given size.
+     */
+    private byte[] compress(byte[] data, int chunkSize) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream os = codec.createOutputStream(bytes);
+        for (int i = 0; i < data.length; i += chunkSize)
+            os.write(data, i, Math.min(chunkSize, data.length - i));
+        os.close();
+        return bytes.toByteArray();
+    }
+
+    private byte[] decompress(byte[] compressed) throws IOException {
+        InputStream is = codec.createInputStream(new ByteArrayInputStream(compressed));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        int n;
+        while ((n = is.read(buffer)) != -1)
+            bytes.write(buffer, 0, n);
+        is.close();
+        return bytes.toByteArray();
+    }
+
+}
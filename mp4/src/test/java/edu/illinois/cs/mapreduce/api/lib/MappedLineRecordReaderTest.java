@@ -0,0 +1,146 @@
+package edu.illinois.cs.mapreduce.api.lib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Test;
+
+import edu.illinois.cs.mapreduce.api.RecordBatch;
+
+/**
+ * Tests reading lines from files mapped in windows much smaller than the
+ * lines, so that lines and "\r\n" pairs cross the ends of windows.
+ * 
+ * @author benjamin
+ */
+public class MappedLineRecordReaderTest {
+
+    private final List<File> files = new ArrayList<File>();
+
+    @After
+    public void tearDown() {
+        for (File file : files)
+            file.delete();
+    }
+
+    @Test
+    public void readsLinesKeyedByLineNumber() throws IOException {
+        MappedLineRecordReader reader = reader("a\r\n\nbc\nd", 16, 10, false);
+        assertRecord(reader, 10, "a");
+        assertRecord(reader, 11, "");
+        assertRecord(reader, 12, "bc");
+        assertRecord(reader, 13, "d");
+        assertFalse(reader.next());
+        reader.close();
+    }
+
+    @Test
+    public void readsLinesKeyedByByteOffset() throws IOException {
+        MappedLineRecordReader reader = reader("a\r\n\nbc\nd\n", 16, 100, true);
+        assertRecord(reader, 100, "a");
+        assertRecord(reader, 103, "");
+        assertRecord(reader, 104, "bc");
+        assertRecord(reader, 107, "d");
+        assertFalse(reader.next());
+        reader.close();
+    }
+
+    @Test
+    public void readsEmptyFile() throws IOException {
+        MappedLineRecordReader reader = reader("", 16, 0, false);
+        assertFalse(reader.next());
+        reader.close();
+    }
+
+    @Test
+    public void dropsCarriageReturnAtEndOfWindow() throws IOException {
+        // the '\r' is the last byte of the first window, its '\n' the first
+        // byte of the next one
+        MappedLineRecordReader reader = reader("0123456789abcde\r\nxyz\r\n", 16, 0, true);
+        assertRecord(reader, 0, "0123456789abcde");
+        assertRecord(reader, 17, "xyz");
+        assertFalse(reader.next());
+        reader.close();
+    }
+
+    @Test
+    public void growsWindowForLongLines() throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < 100; i++)
+            line.append((char)('a' + i % 26));
+        MappedLineRecordReader reader = reader("ab\n" + line + "\r\n" + line, 16, 0, true);
+        assertRecord(reader, 0, "ab");
+        assertRecord(reader, 3, line.toString());
+        assertRecord(reader, 105, line.toString());
+        assertFalse(reader.next());
+        reader.close();
+    }
+
+    @Test
+    public void readsRandomLinesAcrossWindows() throws IOException {
+        Random random = new Random(0);
+        StringBuilder text = new StringBuilder();
+        List<String> lines = new ArrayList<String>();
+        List<Long> offsets = new ArrayList<Long>();
+        for (int i = 0; i < 2000; i++) {
+            offsets.add((long)text.length());
+            int length = random.nextInt(10) == 0 ? random.nextInt(200) : random.nextInt(20);
+            StringBuilder line = new StringBuilder();
+            for (int j = 0; j < length; j++)
+                line.append((char)('a' + random.nextInt(26)));
+            lines.add(line.toString());
+            text.append(line).append(random.nextBoolean() ? "\n" : "\r\n");
+        }
+        for (int windowSize : new int[] { 8, 16, 17, 100 }) {
+            MappedLineRecordReader reader = reader(text.toString(), windowSize, 0, true);
+            for (int i = 0; i < lines.size(); i++)
+                assertRecord(reader, offsets.get(i), lines.get(i));
+            assertFalse(reader.next());
+            reader.close();
+            // batches hold the same records
+            reader = reader(text.toString(), windowSize, 0, true);
+            RecordBatch<Long, Text> batch = new RecordBatch<Long, Text>(7);
+            int i = 0;
+            while (reader.next(batch)) {
+                for (int j = 0; j < batch.size(); j++, i++) {
+                    assertEquals(offsets.get(i), batch.getKey(j));
+                    assertEquals(lines.get(i), batch.getValue(j).toString());
+                }
+            }
+            assertEquals(lines.size(), i);
+            reader.close();
+        }
+    }
+
+    private MappedLineRecordReader reader(String text, long windowSize, long firstKey, boolean byteOffsets)
+        throws IOException {
+        File file = File.createTempFile("mapped", ".txt");
+        files.add(file);
+        OutputStream os = new FileOutputStream(file);
+        try {
+            os.write(text.getBytes("US-ASCII"));
+        } finally {
+            os.close();
+        }
+        FileInputStream is = new FileInputStream(file);
+        return new MappedLineRecordReader(is.getChannel(), firstKey, byteOffsets, windowSize);
+    }
+
+    private static void assertRecord(MappedLineRecordReader reader, long key, String line) throws IOException {
+        assertTrue(reader.next());
+        assertEquals(Long.valueOf(key), reader.getKey());
+        assertEquals(line, reader.getValue().toString());
+    }
+
+}
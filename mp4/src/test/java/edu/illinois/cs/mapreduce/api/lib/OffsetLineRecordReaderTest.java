@@ -0,0 +1,86 @@
+package edu.illinois.cs.mapreduce.api.lib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests reading offset + line records, including lines that cross the end of
+ * the reader's block.
+ * 
+ * @author benjamin
+ */
+public class OffsetLineRecordReaderTest {
+
+    @Test
+    public void readsLinesWithOffsets() throws IOException {
+        OffsetLineRecordReader reader = reader("a\r\n\nbc\nd", 100);
+        assertRecord(reader, 100, "a");
+        assertRecord(reader, 103, "");
+        assertRecord(reader, 104, "bc");
+        assertRecord(reader, 107, "d");
+        assertFalse(reader.next());
+        reader.close();
+    }
+
+    @Test
+    public void readsEmptyInput() throws IOException {
+        OffsetLineRecordReader reader = reader("", 0);
+        assertFalse(reader.next());
+        reader.close();
+    }
+
+    @Test
+    public void readsLinesAcrossBlocks() throws IOException {
+        Random random = new Random(0);
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        List<String> lines = new ArrayList<String>();
+        List<Long> offsets = new ArrayList<Long>();
+        for (int i = 0; i < 200; i++) {
+            offsets.add((long)data.size());
+            int length = random.nextInt(4) == 0 ? random.nextInt(200000) : random.nextInt(30);
+            StringBuilder line = new StringBuilder();
+            for (int j = 0; j < length; j++)
+                line.append((char)('a' + random.nextInt(26)));
+            lines.add(line.toString());
+            data.write(line.toString().getBytes("US-ASCII"));
+            if (random.nextBoolean())
+                data.write('\r');
+            data.write('\n');
+        }
+        // a '\r' as the last byte of a block with its '\n' in the next one
+        offsets.add((long)data.size());
+        StringBuilder line = new StringBuilder();
+        while (data.size() + line.length() + 1 < 64 * 1024 * 100)
+            line.append('x');
+        lines.add(line.toString());
+        data.write(line.toString().getBytes("US-ASCII"));
+        data.write('\r');
+        data.write('\n');
+        OffsetLineRecordReader reader = new OffsetLineRecordReader(new ByteArrayInputStream(data.toByteArray()), 0);
+        for (int i = 0; i < lines.size(); i++)
+            assertRecord(reader, offsets.get(i), lines.get(i));
+        assertFalse(reader.next());
+        reader.close();
+    }
+
+    private static OffsetLineRecordReader reader(String text, long start) throws IOException {
+        return new OffsetLineRecordReader(new ByteArrayInputStream(text.getBytes("US-ASCII")), start);
+    }
+
+    private static void assertRecord(OffsetLineRecordReader reader, long offset, String line) throws IOException {
+        assertTrue(reader.next());
+        assertEquals(Long.valueOf(offset), reader.getKey());
+        assertEquals(line, reader.getValue());
+    }
+
+}
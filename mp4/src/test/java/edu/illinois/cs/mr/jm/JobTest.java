@@ -0,0 +1,89 @@
+package edu.illinois.cs.mr.jm;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.illinois.cs.mr.NodeID;
+import edu.illinois.cs.mr.util.Status.State;
+
+/**
+ * Tests when a job starts its reduce tasks.
+ * 
+ * @author benjamin
+ */
+public class JobTest {
+
+    private final JobID jobID = new JobID(new NodeID(1), 1);
+    private final Job job = new Job(jobID, "job.jar", null);
+
+    @Test
+    public void schedulesReduceTasksOnceSlowstartIsReached() {
+        List<MapTask> tasks = addMapTasks(4);
+        job.setMapTasksRegistered();
+        assertFalse(job.shouldScheduleReduceTasks(0.5));
+        tasks.get(0).setState(State.SUCCEEDED);
+        assertFalse(job.shouldScheduleReduceTasks(0.5));
+        tasks.get(2).setState(State.SUCCEEDED);
+        assertTrue(job.shouldScheduleReduceTasks(0.5));
+        // only once
+        assertFalse(job.shouldScheduleReduceTasks(0.5));
+        tasks.get(1).setState(State.SUCCEEDED);
+        tasks.get(3).setState(State.SUCCEEDED);
+        assertFalse(job.shouldScheduleReduceTasks(0.5));
+        assertFalse(job.shouldScheduleReduceTasks(1.0));
+    }
+
+    @Test
+    public void waitsForAllMapTasks() {
+        List<MapTask> tasks = addMapTasks(3);
+        job.setMapTasksRegistered();
+        for (int i = 0; i < 2; i++) {
+            tasks.get(i).setState(State.SUCCEEDED);
+            assertFalse(job.shouldScheduleReduceTasks(1.0));
+        }
+        tasks.get(2).setState(State.SUCCEEDED);
+        assertTrue(job.shouldScheduleReduceTasks(1.0));
+    }
+
+    @Test
+    public void waitsUntilMapTasksAreRegistered() {
+        for (MapTask task : addMapTasks(2))
+            task.setState(State.SUCCEEDED);
+        // more map tasks may still be added
+        assertFalse(job.shouldScheduleReduceTasks(0.0));
+        job.setMapTasksRegistered();
+        assertTrue(job.shouldScheduleReduceTasks(0.0));
+    }
+
+    @Test
+    public void schedulesReduceTasksOfJobWithoutMapTasks() {
+        job.setMapTasksRegistered();
+        assertTrue(job.shouldScheduleReduceTasks(1.0));
+        assertFalse(job.shouldScheduleReduceTasks(1.0));
+    }
+
+    @Test
+    public void doesNotScheduleReduceTasksOfFailedJob() {
+        for (MapTask task : addMapTasks(2))
+            task.setState(State.SUCCEEDED);
+        job.setMapTasksRegistered();
+        job.setState(State.FAILED);
+        assertFalse(job.shouldScheduleReduceTasks(0.0));
+    }
+
+    private List<MapTask> addMapTasks(int n) {
+        List<MapTask> tasks = new ArrayList<MapTask>();
+        for (int i = 0; i < n; i++) {
+            MapTask task = new MapTask(new TaskID(jobID, i, true), null);
+            job.addTask(task);
+            tasks.add(task);
+        }
+        return tasks;
+    }
+
+}
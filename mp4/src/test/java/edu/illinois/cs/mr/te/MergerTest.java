@@ -0,0 +1,236 @@
+package edu.illinois.cs.mr.te;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.illinois.cs.mapreduce.api.Context;
+import edu.illinois.cs.mapreduce.api.RawComparator;
+import edu.illinois.cs.mapreduce.api.Reducer;
+import edu.illinois.cs.mapreduce.api.Serialization;
+import edu.illinois.cs.mapreduce.api.lib.BinarySerialization;
+import edu.illinois.cs.mr.NodeConfiguration;
+import edu.illinois.cs.mr.fs.FileSystem;
+import edu.illinois.cs.mr.fs.Path;
+import edu.illinois.cs.mr.te.Merger.Segment;
+import edu.illinois.cs.mr.util.FileUtil;
+
+/**
+ * Tests merging sorted runs in several passes, with and without a combiner.
+ * 
+ * @author benjamin
+ */
+public class MergerTest {
+
+    private static final int FACTOR = 3;
+
+    private File dir;
+    private FileSystem fileSystem;
+    private Serialization serialization;
+    private RawComparator<Object> comparator;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("merger", "");
+        dir.delete();
+        FileUtil.ensureDirExists(dir);
+        Properties properties = new Properties();
+        properties.setProperty("fs.root.dir", dir.getPath());
+        properties.setProperty("node.peers", "");
+        fileSystem = new FileSystem(NodeConfiguration.load(properties));
+        serialization = new BinarySerialization();
+        comparator = serialization.getRawComparator();
+    }
+
+    @After
+    public void tearDown() {
+        FileUtil.deleteRecursive(dir);
+    }
+
+    @Test
+    public void mergesRunsInSeveralPasses() throws IOException {
+        Random random = new Random(0);
+        List<Segment> segments = new ArrayList<Segment>();
+        List<Long> expected = new ArrayList<Long>();
+        for (int i = 0; i < 20; i++) {
+            long[] keys = new long[random.nextInt(50)];
+            for (int j = 0; j < keys.length; j++) {
+                keys[j] = random.nextInt(1000) - 500;
+                expected.add(keys[j]);
+            }
+            Arrays.sort(keys);
+            segments.add(run(keys));
+        }
+        Collections.sort(expected);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        newMerger().merge(segments, os);
+        assertEquals(expected, readKeys(new ByteArrayInputStream(os.toByteArray())));
+        assertEquals(0, dir.list().length);
+    }
+
+    @Test
+    public void mergesRunsAtOnceUpToFactor() throws IOException {
+        List<Segment> segments = new ArrayList<Segment>();
+        for (int i = 0; i < FACTOR; i++)
+            segments.add(run(new long[] { i, i + FACTOR }));
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        newMerger().merge(segments, os);
+        assertEquals(Arrays.asList(0L, 1L, 2L, 3L, 4L, 5L), readKeys(new ByteArrayInputStream(os.toByteArray())));
+    }
+
+    @Test
+    public void deletesTempFilesWhenQueueIsClosed() throws IOException {
+        List<Segment> segments = new ArrayList<Segment>();
+        for (int i = 0; i < 10; i++)
+            segments.add(run(new long[] { 9 - i }));
+        MergeQueue<Long, Long> queue = newMerger().open(segments);
+        assertTrue(dir.list().length > 0);
+        try {
+            for (long key = 0; key < 10; key++) {
+                assertTrue(queue.next());
+                assertEquals(Long.valueOf(key), queue.getKey());
+            }
+            assertFalse(queue.next());
+        } finally {
+            queue.close();
+        }
+        assertEquals(0, dir.list().length);
+    }
+
+    @Test
+    public void combinesEveryPass() throws IOException {
+        List<Segment> segments = new ArrayList<Segment>();
+        for (int i = 0; i < 20; i++)
+            segments.add(run(new long[] { 0, 1, 2, 3, 4 }));
+        Combiner<Object, Object> combiner = new Combiner<Object, Object>(new SumReducer(), comparator, 0.1, false);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        newMerger(combiner).merge(segments, os);
+        assertEquals(Arrays.asList(0L, 1L, 2L, 3L, 4L), readKeys(new ByteArrayInputStream(os.toByteArray())));
+        assertEquals(Arrays.asList(20L, 20L, 20L, 20L, 20L), readValues(new ByteArrayInputStream(os.toByteArray())));
+        assertTrue(combiner.isEnabled());
+    }
+
+    @Test
+    public void combinesIntermediatePassesOfOpenedQueue() throws IOException {
+        List<Segment> segments = new ArrayList<Segment>();
+        for (int i = 0; i < 20; i++)
+            segments.add(run(new long[] { 0, 1, 2, 3, 4 }));
+        Combiner<Object, Object> combiner = new Combiner<Object, Object>(new SumReducer(), comparator, 0.1, false);
+        MergeQueue<Long, Long> queue = newMerger(combiner).open(segments);
+        long[] sums = new long[5];
+        int records = 0;
+        try {
+            while (queue.next()) {
+                sums[queue.getKey().intValue()] += queue.getValue();
+                records++;
+            }
+        } finally {
+            queue.close();
+        }
+        // the final pass is left to the caller, one record per key and run
+        assertEquals(5 * FACTOR, records);
+        assertTrue(Arrays.equals(new long[] { 20, 20, 20, 20, 20 }, sums));
+    }
+
+    @Test
+    public void disablesCombinerThatDoesNotReduce() throws IOException {
+        List<Segment> segments = new ArrayList<Segment>();
+        List<Long> expected = new ArrayList<Long>();
+        for (int i = 0; i < 20; i++) {
+            long[] keys = new long[100];
+            for (int j = 0; j < keys.length; j++) {
+                keys[j] = j * 20 + i;
+                expected.add(keys[j]);
+            }
+            segments.add(run(keys));
+        }
+        Collections.sort(expected);
+        Combiner<Object, Object> combiner = new Combiner<Object, Object>(new SumReducer(), comparator, 0.1, false);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        newMerger(combiner).merge(segments, os);
+        assertFalse(combiner.isEnabled());
+        assertEquals(expected, readKeys(new ByteArrayInputStream(os.toByteArray())));
+    }
+
+    private Merger newMerger() {
+        return newMerger(null);
+    }
+
+    private Merger newMerger(Combiner<Object, Object> combiner) {
+        return new Merger(fileSystem, serialization, comparator, FACTOR, new Path("merge"), combiner, null);
+    }
+
+    /**
+     * Returns a segment over a run of the given sorted keys, each with the
+     * value 1.
+     */
+    private Segment run(long[] keys) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        RunWriter<Object, Object> writer = new RunWriter<Object, Object>(os, serialization);
+        for (long key : keys)
+            writer.append(key, 1L);
+        writer.close();
+        final byte[] bytes = os.toByteArray();
+        return new Segment() {
+            @Override
+            public InputStream open() {
+                return new ByteArrayInputStream(bytes);
+            }
+        };
+    }
+
+    private List<Long> readKeys(InputStream is) throws IOException {
+        List<Long> keys = new ArrayList<Long>();
+        RunReader<Long, Long> reader = new RunReader<Long, Long>(is, serialization);
+        try {
+            while (reader.next())
+                keys.add(reader.getKey());
+        } finally {
+            reader.close();
+        }
+        return keys;
+    }
+
+    private List<Long> readValues(InputStream is) throws IOException {
+        List<Long> values = new ArrayList<Long>();
+        RunReader<Long, Long> reader = new RunReader<Long, Long>(is, serialization);
+        try {
+            while (reader.next())
+                values.add(reader.getValue());
+        } finally {
+            reader.close();
+        }
+        return values;
+    }
+
+    /**
+     * Sums the values of a key.
+     */
+    private static class SumReducer extends Reducer<Object, Object, Object, Object> {
+
+        @Override
+        public void reduce(Object key, Iterable<Object> values, Context<Object, Object> context) throws IOException {
+            long sum = 0;
+            for (Object value : values)
+                sum += (Long)value;
+            context.write(key, sum);
+        }
+    }
+
+}
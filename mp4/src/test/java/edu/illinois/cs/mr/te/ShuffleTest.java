@@ -0,0 +1,216 @@
+package edu.illinois.cs.mr.te;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.illinois.cs.mr.Node;
+import edu.illinois.cs.mr.NodeConfiguration;
+import edu.illinois.cs.mr.NodeID;
+import edu.illinois.cs.mr.NodeService;
+import edu.illinois.cs.mr.fs.FileSystem;
+import edu.illinois.cs.mr.fs.Path;
+import edu.illinois.cs.mr.fs.QualifiedPath;
+import edu.illinois.cs.mr.jm.JobID;
+import edu.illinois.cs.mr.util.FileUtil;
+
+/**
+ * Tests fetching map outputs from a remote node whose job manager reports
+ * them one by one, and cleaning up after failed fetches.
+ * 
+ * @author benjamin
+ */
+public class ShuffleTest {
+
+    private static final NodeID REMOTE = new NodeID(2);
+    private static final int THREADS = 2;
+
+    private File dir;
+    private FileSystem fileSystem;
+    private TaskExecutor taskExecutor;
+    private Node node;
+    private final JobID jobID = new JobID(REMOTE, 1);
+    // map outputs returned by successive polls, the last one repeated
+    private final List<QualifiedPath[]> polls = Collections.synchronizedList(new ArrayList<QualifiedPath[]>());
+    private final Map<String, byte[]> outputs = Collections.synchronizedMap(new HashMap<String, byte[]>());
+    // core pool sizes seen by the polls
+    private final List<Integer> poolSizes = Collections.synchronizedList(new ArrayList<Integer>());
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("shuffle", "");
+        dir.delete();
+        FileUtil.ensureDirExists(dir);
+        Properties properties = new Properties();
+        properties.setProperty("fs.root.dir", dir.getPath());
+        properties.setProperty("node.peers", "");
+        properties.setProperty("te.num.threads", Integer.toString(THREADS));
+        NodeConfiguration config = NodeConfiguration.load(properties);
+        fileSystem = new FileSystem(config);
+        taskExecutor = new TaskExecutor(config);
+        Map<NodeID, NodeService> nodeMap = new HashMap<NodeID, NodeService>();
+        nodeMap.put(REMOTE, newRemoteNode());
+        node = new Node(config, null, null, taskExecutor, fileSystem, nodeMap);
+    }
+
+    @After
+    public void tearDown() {
+        taskExecutor.stop();
+        FileUtil.deleteRecursive(dir);
+    }
+
+    @Test
+    public void fetchesOutputsAsMapTasksSucceed() throws Exception {
+        QualifiedPath[] outputs = { output(0, "first"), output(1, "second"), output(2, "") };
+        polls.add(new QualifiedPath[3]);
+        polls.add(new QualifiedPath[] { outputs[0], null, outputs[2] });
+        polls.add(outputs);
+        List<Path> paths = newShuffle().run();
+        assertEquals(3, paths.size());
+        assertArrayEquals("first".getBytes("US-ASCII"), read(paths.get(0)));
+        assertArrayEquals("second".getBytes("US-ASCII"), read(paths.get(1)));
+        assertArrayEquals(new byte[0], read(paths.get(2)));
+        // the pool had a thread more while the shuffle waited
+        assertEquals(THREADS + 1, (int)poolSizes.get(poolSizes.size() - 1));
+        assertPoolSize(THREADS);
+    }
+
+    @Test
+    public void doesNotWaitIfMapTasksHaveSucceeded() throws Exception {
+        polls.add(new QualifiedPath[] { output(0, "only") });
+        List<Path> paths = newShuffle().run();
+        assertArrayEquals("only".getBytes("US-ASCII"), read(paths.get(0)));
+        assertEquals(Collections.singletonList(THREADS), poolSizes);
+        assertPoolSize(THREADS);
+    }
+
+    @Test
+    public void deletesCopiesIfFetchFails() throws Exception {
+        QualifiedPath[] outputs = { output(0, "first"), output(1, null), null };
+        polls.add(outputs);
+        try {
+            newShuffle().run();
+            fail();
+        } catch (IOException e) {
+            assertEquals("broken map output", e.getMessage());
+        }
+        assertEquals(Collections.<String> emptyList(), findCopies(dir));
+        assertPoolSize(THREADS);
+    }
+
+    @Test
+    public void deletesCopiesIfJobStops() throws Exception {
+        polls.add(new QualifiedPath[] { output(0, "first"), null });
+        polls.add(new QualifiedPath[] { output(0, "first"), null });
+        polls.add(null);
+        try {
+            newShuffle().run();
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("no longer running"));
+        }
+        assertEquals(Collections.<String> emptyList(), findCopies(dir));
+        assertPoolSize(THREADS);
+    }
+
+    private Shuffle newShuffle() {
+        return new Shuffle(node, taskExecutor, jobID, 0, new Path("job", "reduce-0-input"), 2, 10);
+    }
+
+    /**
+     * Returns the path of a map output on the remote node. Reading an output
+     * without content fails after the first bytes.
+     */
+    private QualifiedPath output(int i, String content) throws IOException {
+        String name = "map-" + i;
+        outputs.put(name, content == null ? null : content.getBytes("US-ASCII"));
+        return new QualifiedPath(REMOTE, new Path(name));
+    }
+
+    /**
+     * Returns a node whose job manager answers the polls and whose file system
+     * serves the map outputs.
+     */
+    private NodeService newRemoteNode() {
+        InvocationHandler handler = new InvocationHandler() {
+            private int poll;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("getMapOutputs")) {
+                    poolSizes.add(taskExecutor.getExecutorService().getCorePoolSize());
+                    return polls.get(Math.min(poll++, polls.size() - 1));
+                }
+                if (method.getName().equals("read")) {
+                    byte[] content = outputs.get(((Path)args[0]).last());
+                    if (content != null)
+                        return new ByteArrayInputStream(content);
+                    return new InputStream() {
+                        private int read;
+
+                        @Override
+                        public int read() throws IOException {
+                            if (read++ >= 100)
+                                throw new IOException("broken map output");
+                            return 'x';
+                        }
+                    };
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        };
+        return (NodeService)Proxy.newProxyInstance(NodeService.class.getClassLoader(),
+                                                   new Class<?>[] { NodeService.class },
+                                                   handler);
+    }
+
+    private byte[] read(Path path) throws IOException {
+        InputStream is = fileSystem.read(path);
+        try {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            int b;
+            while ((b = is.read()) != -1)
+                os.write(b);
+            return os.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
+    private static List<String> findCopies(File dir) {
+        List<String> copies = new ArrayList<String>();
+        for (File file : dir.listFiles()) {
+            if (file.isDirectory())
+                copies.addAll(findCopies(file));
+            else if (file.getName().contains("-input-"))
+                copies.add(file.getPath());
+        }
+        return copies;
+    }
+
+    private void assertPoolSize(int size) {
+        assertEquals(size, taskExecutor.getExecutorService().getCorePoolSize());
+        assertEquals(size, taskExecutor.getExecutorService().getMaximumPoolSize());
+    }
+
+}
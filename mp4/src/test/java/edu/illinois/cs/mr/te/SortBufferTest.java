@@ -0,0 +1,193 @@
+package edu.illinois.cs.mr.te;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import edu.illinois.cs.mapreduce.api.RawComparator;
+import edu.illinois.cs.mapreduce.api.Serialization;
+import edu.illinois.cs.mapreduce.api.lib.BinarySerialization;
+import edu.illinois.cs.mr.util.DataInputBuffer;
+import edu.illinois.cs.mr.util.DataOutputBuffer;
+
+/**
+ * Tests buffering and sorting serialized records.
+ * 
+ * @author benjamin
+ */
+public class SortBufferTest {
+
+    private static final Serialization SERIALIZATION = new BinarySerialization();
+
+    private final RawComparator<Object> comparator = SERIALIZATION.getRawComparator();
+    private final DataOutputBuffer keyBuffer = new DataOutputBuffer();
+    private final DataOutputBuffer valueBuffer = new DataOutputBuffer();
+
+    @Test
+    public void sortsRecordsByPartitionAndKey() throws IOException {
+        SortBuffer buffer = new SortBuffer(1 << 20, comparator);
+        Random random = new Random(0);
+        int records = 1000;
+        for (int i = 0; i < records; i++)
+            assertTrue(add(buffer, random.nextInt(4), random.nextInt(200) - 100, i));
+        buffer.sort();
+        assertSorted(buffer, records);
+    }
+
+    @Test
+    public void keepsRecordsOfSinglePartition() throws IOException {
+        SortBuffer buffer = new SortBuffer(1 << 20, comparator);
+        for (int i = 0; i < 10; i++)
+            add(buffer, 0, 9 - i, i);
+        buffer.sort();
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, buffer.getPartition(i));
+            assertEquals(i, getKey(buffer, i));
+            assertEquals(9 - i, getValue(buffer, i));
+        }
+    }
+
+    @Test
+    public void rejectsRecordsBeyondCapacity() throws IOException {
+        SortBuffer buffer = new SortBuffer(1000, comparator);
+        int records = 0;
+        while (add(buffer, 0, records, records))
+            records++;
+        assertTrue(records > 0);
+        assertEquals(records, buffer.size());
+        buffer.reset();
+        assertTrue(buffer.isEmpty());
+        assertTrue(add(buffer, 0, 0, 0));
+    }
+
+    @Test
+    public void acceptsLargeRecordIfEmpty() throws IOException {
+        SortBuffer buffer = new SortBuffer(16, comparator);
+        assertTrue(buffer.add(0, new byte[100], 100, new byte[100], 100));
+        assertFalse(buffer.add(0, new byte[1], 1, new byte[1], 1));
+        assertEquals(1, buffer.size());
+    }
+
+    @Test
+    public void sortsRunsInParallel() throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(7);
+        try {
+            // a single partition is split into runs merged over several rounds
+            assertParallelSort(executor, 1, 7);
+            assertParallelSort(executor, 3, 3);
+            assertParallelSort(executor, 5, 1);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Asserts that sorting a buffer of enough records to be split into runs
+     * gives the same order as sorting it on a single thread.
+     */
+    private void assertParallelSort(ExecutorService executor, int partitions, int threads) throws IOException {
+        SortBuffer parallel = new SortBuffer(16 << 20, comparator);
+        SortBuffer single = new SortBuffer(16 << 20, comparator);
+        Random random = new Random(partitions);
+        int records = 100000;
+        for (int i = 0; i < records; i++) {
+            int partition = random.nextInt(partitions);
+            long key = random.nextLong();
+            add(parallel, partition, key, i);
+            add(single, partition, key, i);
+        }
+        assertTrue(parallel.getMaxParallelism() > 1);
+        parallel.sort(executor, threads);
+        single.sort();
+        assertSorted(parallel, records);
+        for (int i = 0; i < records; i++) {
+            assertEquals(single.getPartition(i), parallel.getPartition(i));
+            assertEquals(getKey(single, i), getKey(parallel, i));
+        }
+    }
+
+    @Test
+    public void sortsKeysWithEqualPrefixes() throws IOException {
+        final RawComparator<Object> normalizing = comparator;
+        // hides the normalized prefixes, so that keys are always compared
+        RawComparator<Object> plain = new RawComparator<Object>() {
+            @Override
+            public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+                return normalizing.compare(b1, s1, l1, b2, s2, l2);
+            }
+
+            @Override
+            public int compare(Object o1, Object o2) {
+                return normalizing.compare(o1, o2);
+            }
+        };
+        Random random = new Random(0);
+        List<String> keys = new ArrayList<String>();
+        for (int i = 0; i < 500; i++)
+            keys.add("normalized-" + random.nextInt(100));
+        List<String> expected = new ArrayList<String>(keys);
+        Collections.sort(expected);
+        assertEquals(expected, sort(keys, normalizing));
+        assertEquals(expected, sort(keys, plain));
+    }
+
+    private List<String> sort(List<String> keys, RawComparator<Object> comparator) throws IOException {
+        SortBuffer buffer = new SortBuffer(1 << 20, comparator);
+        for (int i = 0; i < keys.size(); i++)
+            add(buffer, 0, keys.get(i), i);
+        buffer.sort();
+        List<String> sorted = new ArrayList<String>();
+        DataInputBuffer in = new DataInputBuffer();
+        for (int i = 0; i < buffer.size(); i++) {
+            in.reset(buffer.getData(), buffer.getKeyOffset(i), buffer.getKeyLength(i));
+            sorted.add((String)SERIALIZATION.deserialize(in));
+        }
+        return sorted;
+    }
+
+    /**
+     * Asserts that the buffer holds the given number of records with distinct
+     * values, ordered by partition and key.
+     */
+    private static void assertSorted(SortBuffer buffer, int records) throws IOException {
+        assertEquals(records, buffer.size());
+        boolean[] seen = new boolean[records];
+        for (int i = 0; i < records; i++) {
+            int value = (int)getValue(buffer, i);
+            assertFalse(seen[value]);
+            seen[value] = true;
+            if (i == 0)
+                continue;
+            int partition = buffer.getPartition(i), previous = buffer.getPartition(i - 1);
+            assertTrue(partition >= previous);
+            if (partition == previous)
+                assertTrue(getKey(buffer, i) >= getKey(buffer, i - 1));
+        }
+    }
+
+    private boolean add(SortBuffer buffer, int partition, Object key, long value) throws IOException {
+        SERIALIZATION.serialize(key, keyBuffer.reset());
+        SERIALIZATION.serialize(value, valueBuffer.reset());
+        return buffer.add(partition, keyBuffer.getData(), keyBuffer.getLength(), valueBuffer.getData(),
+                          valueBuffer.getLength());
+    }
+
+    private static long getKey(SortBuffer buffer, int i) throws IOException {
+        return SERIALIZATION.deserializeLong(buffer.getData(), buffer.getKeyOffset(i), buffer.getKeyLength(i));
+    }
+
+    private static long getValue(SortBuffer buffer, int i) throws IOException {
+        return SERIALIZATION.deserializeLong(buffer.getData(), buffer.getValueOffset(i), buffer.getValueLength(i));
+    }
+
+}
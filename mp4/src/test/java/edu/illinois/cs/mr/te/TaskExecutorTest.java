@@ -0,0 +1,93 @@
+package edu.illinois.cs.mr.te;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.illinois.cs.mr.NodeConfiguration;
+
+/**
+ * Tests growing the task pool while a task waits for other tasks.
+ * 
+ * @author benjamin
+ */
+public class TaskExecutorTest {
+
+    private TaskExecutor taskExecutor;
+    private ThreadPoolExecutor pool;
+
+    @Before
+    public void setUp() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("node.peers", "");
+        properties.setProperty("te.num.threads", "1");
+        taskExecutor = new TaskExecutor(NodeConfiguration.load(properties));
+        pool = taskExecutor.getExecutorService();
+    }
+
+    @After
+    public void tearDown() {
+        taskExecutor.stop();
+    }
+
+    @Test
+    public void restoresPoolSizesAfterWaits() {
+        taskExecutor.beginWait();
+        assertPoolSize(2);
+        taskExecutor.beginWait();
+        assertPoolSize(3);
+        taskExecutor.endWait();
+        assertPoolSize(2);
+        taskExecutor.endWait();
+        assertPoolSize(1);
+    }
+
+    @Test
+    public void runsTaskWhileOnlyThreadWaits() throws InterruptedException {
+        final CountDownLatch waiting = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        final CountDownLatch ran = new CountDownLatch(1);
+        pool.execute(new Runnable() {
+            @Override
+            public void run() {
+                taskExecutor.beginWait();
+                waiting.countDown();
+                try {
+                    done.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    taskExecutor.endWait();
+                }
+            }
+        });
+        assertTrue(waiting.await(10, TimeUnit.SECONDS));
+        pool.execute(new Runnable() {
+            @Override
+            public void run() {
+                ran.countDown();
+            }
+        });
+        assertTrue(ran.await(10, TimeUnit.SECONDS));
+        done.countDown();
+        long timeout = System.currentTimeMillis() + 10000;
+        while (pool.getCorePoolSize() != 1 && System.currentTimeMillis() < timeout)
+            Thread.sleep(10);
+        assertPoolSize(1);
+    }
+
+    private void assertPoolSize(int size) {
+        assertEquals(size, pool.getCorePoolSize());
+        assertEquals(size, pool.getMaximumPoolSize());
+    }
+
+}